@@ -0,0 +1,13 @@
+# Checks that the built jar holds the classes of each Java version of the multi-release jar.
+jar=$(ls target/chatexchange-*.jar | grep -v -e sources -e javadoc | head -n 1)
+status=0
+for class in META-INF/versions/11/org/sobotics/chatexchange/chat/JfrEvents.class \
+             META-INF/versions/21/org/sobotics/chatexchange/chat/Threads.class
+do
+    if ! unzip -l "$jar" | grep -q "$class"
+    then
+        echo "$jar is missing $class"
+        status=1
+    fi
+done
+exit $status
@@ -0,0 +1,150 @@
+package org.sobotics.chatexchange.chat;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Admission stage of the events of a room, enforcing a {@link FloodControl} on the raw events before they are decoded. It
+ * keeps the token buckets of the room and of its users, and the counts of the events shed since the last report.
+ */
+final class AdmissionControl {
+
+	private static final long REPORT_NANOS = TimeUnit.SECONDS.toNanos(10);
+	private static final int SAMPLE_INTERVAL = 10;
+
+	private final FloodControl floodControl;
+	private final int roomId;
+	private final TokenBucket roomBucket;
+	private final Map<Long, TokenBucket> userBuckets = new HashMap<>();
+
+	private boolean shedding;
+	private long lastShedNanos;
+	private long sampleCount;
+	private int shedEvents;
+	private Map<Long, Integer> shedEventsByUser = new HashMap<>();
+	private List<Long> shedMessageIds = new ArrayList<>();
+
+	AdmissionControl(FloodControl floodControl, int roomId) {
+		this.floodControl = floodControl;
+		this.roomId = roomId;
+		roomBucket = new TokenBucket(floodControl.getRoomEventsPerMinute(), System.nanoTime());
+	}
+
+	/**
+	 * Tells whether the given raw event can be dispatched, taking a token from the buckets of the room and of its user if
+	 * it is limited.
+	 * @param event Raw event.
+	 * @param nowNanos Current value of {@link System#nanoTime()}.
+	 * @param reports Receives the report sent when the room starts shedding events.
+	 * @return <code>true</code> if the event must be dispatched, <code>false</code> if it is shed.
+	 */
+	synchronized boolean admit(JsonObject event, long nowNanos, Consumer<LoadShedding> reports) {
+		if (!isLimited(event)) return true;
+		long userId = longValue(event, "user_id");
+		TokenBucket userBucket = userBuckets.computeIfAbsent(userId, id -> new TokenBucket(floodControl.getUserEventsPerMinute(), nowNanos));
+		// the room is only charged for the events its users are allowed to raise, so that one user cannot exhaust it, and
+		// the user is only charged for the events the room lets through
+		if (userBucket.hasToken(nowNanos) && roomBucket.hasToken(nowNanos)) {
+			userBucket.take();
+			roomBucket.take();
+			return true;
+		}
+		lastShedNanos = nowNanos;
+		if (floodControl.getShedPolicy() == ShedPolicy.SAMPLE && ++sampleCount % SAMPLE_INTERVAL == 0) return true;
+		shedEvents++;
+		shedEventsByUser.merge(userId, 1, Integer::sum);
+		if (floodControl.getShedPolicy() == ShedPolicy.SUMMARIZE && event.has("message_id")) {
+			shedMessageIds.add(longValue(event, "message_id"));
+		}
+		if (!shedding) {
+			shedding = true;
+			reports.accept(report(true));
+		}
+		return false;
+	}
+
+	/**
+	 * Sends the periodic report of the events shed, and forgets the buckets of the idle users. This is meant to be called
+	 * every 10 seconds.
+	 * @param nowNanos Current value of {@link System#nanoTime()}.
+	 * @param reports Receives the report, if any is due.
+	 */
+	synchronized void tick(long nowNanos, Consumer<LoadShedding> reports) {
+		// a full bucket is the same as no bucket
+		userBuckets.values().removeIf(bucket -> bucket.isFull(nowNanos));
+		if (!shedding) return;
+		if (nowNanos - lastShedNanos >= REPORT_NANOS) {
+			shedding = false;
+			reports.accept(report(false));
+		} else if (shedEvents > 0) {
+			reports.accept(report(true));
+		}
+	}
+
+	private LoadShedding report(boolean active) {
+		LoadShedding report = new LoadShedding(roomId, floodControl.getShedPolicy(), active, shedEvents, shedEventsByUser, shedMessageIds);
+		shedEvents = 0;
+		shedEventsByUser = new HashMap<>();
+		shedMessageIds = new ArrayList<>();
+		return report;
+	}
+
+	/**
+	 * Tells whether the given raw event is about a message: posted, edited, starred, mention or reply.
+	 */
+	private static boolean isLimited(JsonObject event) {
+		switch ((int) longValue(event, "event_type")) {
+		case 1: case 2: case 6: case 8: case 18: return true;
+		default: return false;
+		}
+	}
+
+	private static long longValue(JsonObject event, String member) {
+		JsonElement element = event.get(member);
+		return element == null || element.isJsonNull() ? 0 : element.getAsLong();
+	}
+
+	/**
+	 * Token bucket holding up to one minute's worth of tokens, refilled continuously.
+	 */
+	private static final class TokenBucket {
+
+		private final double capacity, tokensPerNano;
+		private double tokens;
+		private long lastRefillNanos;
+
+		private TokenBucket(int tokensPerMinute, long nowNanos) {
+			capacity = tokens = tokensPerMinute;
+			tokensPerNano = tokensPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+			lastRefillNanos = nowNanos;
+		}
+
+		private boolean hasToken(long nowNanos) {
+			refill(nowNanos);
+			return tokens >= 1;
+		}
+
+		private void take() {
+			tokens--;
+		}
+
+		private boolean isFull(long nowNanos) {
+			refill(nowNanos);
+			return tokens >= capacity;
+		}
+
+		private void refill(long nowNanos) {
+			tokens = Math.min(capacity, tokens + (nowNanos - lastRefillNanos) * tokensPerNano);
+			lastRefillNanos = nowNanos;
+		}
+
+	}
+
+}
@@ -0,0 +1,55 @@
+package org.sobotics.chatexchange.chat;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of a bulk operation on messages, like {@link Room#deleteAll(java.util.Collection)}: for each message id, whether the
+ * operation succeeded, failed, or was skipped because it wasn't needed.
+ */
+public final class BulkResult {
+
+	private final List<Long> succeeded;
+	private final List<Long> skipped;
+	private final Map<Long, Throwable> failures;
+
+	BulkResult(List<Long> succeeded, List<Long> skipped, Map<Long, Throwable> failures) {
+		this.succeeded = Collections.unmodifiableList(succeeded);
+		this.skipped = Collections.unmodifiableList(skipped);
+		this.failures = Collections.unmodifiableMap(failures);
+	}
+
+	/**
+	 * Returns the ids of the messages for which the operation succeeded.
+	 * @return Ids of the messages successfully processed.
+	 */
+	public List<Long> getSucceeded() {
+		return succeeded;
+	}
+
+	/**
+	 * Returns the ids of the messages that were skipped, because they are already known to be deleted.
+	 * @return Ids of the messages that were skipped.
+	 */
+	public List<Long> getSkipped() {
+		return skipped;
+	}
+
+	/**
+	 * Returns the ids of the messages for which the operation failed, with the cause of each failure.
+	 * @return Map of the ids of the messages that failed to the cause of their failure.
+	 */
+	public Map<Long, Throwable> getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Tells whether the operation succeeded, or was skipped, for every message.
+	 * @return <code>true</code> if no operation failed.
+	 */
+	public boolean isComplete() {
+		return failures.isEmpty();
+	}
+
+}
@@ -0,0 +1,88 @@
+package org.sobotics.chatexchange.chat;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongConsumer;
+
+/**
+ * Thread-safe set of primitive longs, like user or message ids, stored without boxing.
+ * <p>Lookups are lock-free in the absence of concurrent writes: they run under an optimistic read, and only take the read lock
+ * if a write happened meanwhile. Iteration works on a snapshot, so the set can be modified while it is iterated.
+ */
+final class ConcurrentLongSet {
+
+	private final StampedLock lock = new StampedLock();
+	private final LongHashTable table;
+
+	ConcurrentLongSet() {
+		this(0);
+	}
+
+	ConcurrentLongSet(int expectedSize) {
+		table = new LongHashTable(expectedSize);
+	}
+
+	boolean contains(long value) {
+		long stamp = lock.tryOptimisticRead();
+		boolean contains = table.contains(value);
+		if (lock.validate(stamp)) {
+			return contains;
+		}
+		stamp = lock.readLock();
+		try {
+			return table.contains(value);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	boolean add(long value) {
+		long stamp = lock.writeLock();
+		try {
+			return table.add(value);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	boolean remove(long value) {
+		long stamp = lock.writeLock();
+		try {
+			return table.remove(value);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	int size() {
+		long stamp = lock.readLock();
+		try {
+			return table.size();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Returns a snapshot of the values of this set, in no particular order.
+	 * @return New array holding the values of this set.
+	 */
+	long[] toArray() {
+		long stamp = lock.readLock();
+		try {
+			return table.toArray();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Performs the given action for each value of a snapshot of this set.
+	 * @param action Action to perform.
+	 */
+	void forEach(LongConsumer action) {
+		for (long value : toArray()) {
+			action.accept(value);
+		}
+	}
+
+}
@@ -0,0 +1,62 @@
+package org.sobotics.chatexchange.chat;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cookies of a client, shared by the client and all its rooms, and scoped by registrable domain: the cookies received from
+ * <code>chat.stackoverflow.com</code> are sent to <code>stackoverflow.com</code>, but not to <code>stackexchange.com</code>.
+ * The registrable domain is made of the last two labels of the host name, which holds for all the chat hosts.
+ * <p>The cookies of each domain are kept in an immutable snapshot, replaced when cookies are received: reading the cookies
+ * to send with a request takes no lock, and requests running in parallel never see a partially updated set of cookies.
+ * <p>Paths are not tracked, since all the cookies of the chat servers apply to the whole site.
+ */
+final class CookieJar {
+
+	private final ConcurrentMap<String, Map<String, String>> cookiesByDomain = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns the cookies to send with a request to the given URL.
+	 * @param url URL of the request.
+	 * @return Unmodifiable snapshot of the cookies.
+	 */
+	Map<String, String> get(String url) {
+		return cookiesByDomain.getOrDefault(registrableDomain(url), Collections.emptyMap());
+	}
+
+	/**
+	 * Stores the cookies received in the response to a request to the given URL.
+	 * @param url URL of the request.
+	 * @param cookies Cookies received.
+	 */
+	void store(String url, Map<String, String> cookies) {
+		if (cookies.isEmpty()) return;
+		cookiesByDomain.compute(registrableDomain(url), (domain, current) -> {
+			if (current != null && current.entrySet().containsAll(cookies.entrySet())) return current;
+			Map<String, String> updated = current == null ? new HashMap<>() : new HashMap<>(current);
+			updated.putAll(cookies);
+			return Collections.unmodifiableMap(updated);
+		});
+	}
+
+	/**
+	 * Returns the registrable domain of the given URL, that is the last two labels of its host name, in lower case.
+	 */
+	static String registrableDomain(String url) {
+		int hostStart = url.indexOf("://");
+		hostStart = hostStart < 0 ? 0 : hostStart + 3;
+		int hostEnd = hostStart;
+		while (hostEnd < url.length() && "/:?#".indexOf(url.charAt(hostEnd)) < 0) hostEnd++;
+		int dot = url.lastIndexOf('.', hostEnd - 1);
+		if (dot > hostStart) {
+			int previousDot = url.lastIndexOf('.', dot - 1);
+			if (previousDot >= hostStart) hostStart = previousDot + 1;
+		}
+		return url.substring(hostStart, hostEnd).toLowerCase(Locale.ROOT);
+	}
+
+}
@@ -0,0 +1,59 @@
+package org.sobotics.chatexchange.chat;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reader counting the characters read through it, and the number of bytes they take once encoded in UTF-8.
+ */
+final class CountingReader extends FilterReader {
+
+	private int chars;
+	private long utf8Bytes;
+
+	CountingReader(Reader in) {
+		super(in);
+	}
+
+	@Override
+	public int read() throws IOException {
+		int c = super.read();
+		if (c >= 0) count((char) c);
+		return c;
+	}
+
+	@Override
+	public int read(char[] buffer, int offset, int length) throws IOException {
+		int read = super.read(buffer, offset, length);
+		for (int i = offset; i < offset + read; i++) {
+			count(buffer[i]);
+		}
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		throw new IOException("Skipping characters is not supported");
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	private void count(char c) {
+		chars++;
+		// each half of a surrogate pair counts for 2 of the 4 bytes of the pair
+		utf8Bytes += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+	}
+
+	int chars() {
+		return chars;
+	}
+
+	long utf8Bytes() {
+		return utf8Bytes;
+	}
+
+}
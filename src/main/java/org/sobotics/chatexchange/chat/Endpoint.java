@@ -0,0 +1,80 @@
+package org.sobotics.chatexchange.chat;
+
+/**
+ * The chat and site endpoints the client talks to. It is used to classify raw HTTP requests, for example to report metrics
+ * per endpoint.
+ * <p>Constants are matched in declaration order, so more specific endpoints must be declared before more general ones.
+ */
+enum Endpoint {
+
+	SEND_MESSAGE("messages.new", "/chats/", "/messages/new"),
+	EVENTS("events", "/chats/", "/events"),
+	LEAVE("leave", "/chats/leave/", ""),
+	MESSAGE_HISTORY("messages.history", "/messages/", "/history"),
+	DELETE_MESSAGE("messages.delete", "/messages/", "/delete"),
+	STAR_MESSAGE("messages.star", "/messages/", "/star"),
+	PIN_MESSAGE("messages.pin", "/messages/", "/owner-star"),
+	EDIT_MESSAGE("messages.edit", "/messages/", ""),
+	MESSAGE_SOURCE("message", "/message/", ""),
+	USER_INFO("user.info", "/user/info", ""),
+	PINGABLE_USERS("rooms.pingable", "/rooms/pingable/", ""),
+	ROOM_THUMBS("rooms.thumbs", "/rooms/thumbs/", ""),
+	ROOM("rooms", "/rooms/", ""),
+	WEB_SOCKET_AUTH("ws-auth", "/ws-auth", ""),
+	UPLOAD_IMAGE("upload.image", "/upload/image", ""),
+	LOGIN("users.login", "/users/login", ""),
+	CURRENT_USER("users.current", "/users/current", ""),
+	OTHER("other", "/", "");
+
+	private static final Endpoint[] VALUES = values();
+
+	private final String key, pathPrefix, pathSuffix;
+
+	private Endpoint(String key, String pathPrefix, String pathSuffix) {
+		this.key = key;
+		this.pathPrefix = pathPrefix;
+		this.pathSuffix = pathSuffix;
+	}
+
+	/**
+	 * @return Short name of this endpoint, like <code>messages.new</code>.
+	 */
+	String getKey() {
+		return key;
+	}
+
+	/**
+	 * Classifies the given URL. This method does not allocate.
+	 * @param url Absolute URL of the request.
+	 * @return Endpoint the URL points to, or {@link #OTHER} if it is unknown.
+	 */
+	static Endpoint of(String url) {
+		int pathStart = pathStart(url);
+		if (pathStart < 0) return OTHER;
+		int queryStart = url.indexOf('?', pathStart);
+		int pathEnd = queryStart < 0 ? url.length() : queryStart;
+		for (Endpoint endpoint : VALUES) {
+			if (endpoint.matches(url, pathStart, pathEnd)) {
+				return endpoint;
+			}
+		}
+		return OTHER;
+	}
+
+	/**
+	 * Returns the index of the first character of the path of the given URL, or -1 if it has no path.
+	 * @param url Absolute URL.
+	 * @return Index of the start of the path.
+	 */
+	static int pathStart(String url) {
+		int schemeEnd = url.indexOf("://");
+		return schemeEnd < 0 ? -1 : url.indexOf('/', schemeEnd + 3);
+	}
+
+	private boolean matches(String url, int pathStart, int pathEnd) {
+		if (!url.startsWith(pathPrefix, pathStart)) return false;
+		int suffixStart = pathEnd - pathSuffix.length();
+		return suffixStart >= pathStart + pathPrefix.length() && url.regionMatches(suffixStart, pathSuffix, 0, pathSuffix.length());
+	}
+
+}
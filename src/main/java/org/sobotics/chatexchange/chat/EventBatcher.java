@@ -0,0 +1,75 @@
+package org.sobotics.chatexchange.chat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.sobotics.chatexchange.chat.event.Event;
+
+/**
+ * Groups the events of a room into batches: either the events of each WebSocket frame, or all the events received within a
+ * time window starting with the first of them.
+ */
+final class EventBatcher {
+
+	private final long windowNanos;
+	private final ScheduledExecutorService scheduler;
+	private final Consumer<List<Event>> sink;
+	// guarded by this
+	private List<Event> pending;
+
+	/**
+	 * Creates a batcher.
+	 * @param windowNanos Duration of the time window, in nanoseconds, or 0 to make a batch of the events of each frame.
+	 * @param scheduler Executor closing the time windows, unused without a time window. Its thread must never be blocked, or
+	 * the batches would be delivered late.
+	 * @param sink Receives the batches, which are never empty.
+	 */
+	EventBatcher(long windowNanos, ScheduledExecutorService scheduler, Consumer<List<Event>> sink) {
+		this.windowNanos = windowNanos;
+		this.scheduler = scheduler;
+		this.sink = sink;
+	}
+
+	/**
+	 * Adds the events of a frame.
+	 * @param events Events of the frame, which must not be modified afterwards.
+	 */
+	void add(List<Event> events) {
+		if (events.isEmpty()) return;
+		if (windowNanos == 0) {
+			sink.accept(Collections.unmodifiableList(events));
+			return;
+		}
+		synchronized (this) {
+			if (pending == null) {
+				pending = new ArrayList<>();
+				try {
+					scheduler.schedule(this::flush, windowNanos, TimeUnit.NANOSECONDS);
+				} catch (RejectedExecutionException e) {
+					// the room is closing, and flushes the pending events itself
+				}
+			}
+			pending.addAll(events);
+		}
+	}
+
+	/**
+	 * Delivers the events of the current time window, if any.
+	 */
+	void flush() {
+		List<Event> batch;
+		synchronized (this) {
+			batch = pending;
+			pending = null;
+		}
+		if (batch != null) {
+			sink.accept(Collections.unmodifiableList(batch));
+		}
+	}
+
+}
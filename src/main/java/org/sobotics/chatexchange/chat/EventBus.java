@@ -0,0 +1,94 @@
+package org.sobotics.chatexchange.chat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.sobotics.chatexchange.chat.event.EventType;
+
+/**
+ * Registry of the event listeners of a client, shared by all its rooms. Each room looks up the listeners that apply to it in
+ * a {@link View}, evaluating the room filters once per room rather than once per event; the view is rebuilt when listeners are
+ * added.
+ */
+final class EventBus {
+
+	// guarded by this
+	private final List<Registration> registrations = new ArrayList<>();
+	private volatile int version;
+
+	/**
+	 * Adds a listener for the events of the given type raised in the rooms selected by the given filter.
+	 * @param eventType Type of the events.
+	 * @param filter Filter of the rooms.
+	 * @param listener Listener to add.
+	 */
+	<T> void add(EventType<T> eventType, RoomFilter filter, Consumer<T> listener) {
+		@SuppressWarnings("unchecked") Consumer<Object> listenerCast = (Consumer<Object>) listener;
+		synchronized (this) {
+			registrations.add(new Registration(eventType, filter, listenerCast));
+			version++;
+		}
+	}
+
+	/**
+	 * Returns the listeners that apply to the given room, unless the given view is still up to date.
+	 * @param current View the room currently has, or <code>null</code>.
+	 * @param host Host of the room.
+	 * @param roomId Id of the room.
+	 * @return Up to date view of the listeners of the room.
+	 */
+	View view(View current, ChatHost host, int roomId) {
+		if (current != null && current.version == version) return current;
+		synchronized (this) {
+			Map<EventType<?>, List<Consumer<Object>>> listeners = new HashMap<>();
+			for (Registration registration : registrations) {
+				if (registration.filter.accepts(host, roomId)) {
+					listeners.computeIfAbsent(registration.eventType, e -> new ArrayList<>()).add(registration.listener);
+				}
+			}
+			return new View(version, listeners);
+		}
+	}
+
+	/**
+	 * Listeners of the client that apply to a given room, by type of event.
+	 */
+	static final class View {
+
+		private final int version;
+		private final Map<EventType<?>, List<Consumer<Object>>> listeners;
+
+		private View(int version, Map<EventType<?>, List<Consumer<Object>>> listeners) {
+			this.version = version;
+			this.listeners = listeners;
+		}
+
+		List<Consumer<Object>> listeners(EventType<?> eventType) {
+			return listeners.getOrDefault(eventType, Collections.emptyList());
+		}
+
+		boolean hasListeners(EventType<?> eventType) {
+			return listeners.containsKey(eventType);
+		}
+
+	}
+
+	private static final class Registration {
+
+		private final EventType<?> eventType;
+		private final RoomFilter filter;
+		private final Consumer<Object> listener;
+
+		private Registration(EventType<?> eventType, RoomFilter filter, Consumer<Object> listener) {
+			this.eventType = eventType;
+			this.filter = filter;
+			this.listener = listener;
+		}
+
+	}
+
+}
@@ -0,0 +1,35 @@
+package org.sobotics.chatexchange.chat;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Drops the chat events that were already received, by any room of the client. Event ids are unique per chat host, so a
+ * window of the last event ids seen is kept for each host.
+ * <p>Duplicates happen when rooms joined on the same host receive the same events, or when the WebSocket reconnects.
+ */
+final class EventDeduplicator {
+
+	private final Map<ChatHost, RecentLongWindow> windows = new EnumMap<>(ChatHost.class);
+
+	/**
+	 * Creates a deduplicator remembering the given number of events per host.
+	 * @param windowSize Number of event ids to remember for each host.
+	 */
+	EventDeduplicator(int windowSize) {
+		for (ChatHost host : ChatHost.values()) {
+			windows.put(host, new RecentLongWindow(windowSize));
+		}
+	}
+
+	/**
+	 * Records the event with the given id, and tells whether it is the first time it is seen.
+	 * @param host Host the event was raised on.
+	 * @param eventId Id of the event.
+	 * @return <code>true</code> if the event wasn't seen before, <code>false</code> if it is a duplicate.
+	 */
+	boolean firstSeen(ChatHost host, long eventId) {
+		return windows.get(host).add(eventId);
+	}
+
+}
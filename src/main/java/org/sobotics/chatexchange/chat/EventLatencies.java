@@ -0,0 +1,133 @@
+package org.sobotics.chatexchange.chat;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.sobotics.chatexchange.chat.event.Event;
+import org.sobotics.chatexchange.chat.event.EventType;
+import org.sobotics.chatexchange.chat.metrics.Histogram;
+
+/**
+ * Latency distributions of the events of a room, from the time they were raised by the chat server to the time their
+ * listeners completed. Distributions are kept for the room as a whole and for each type of event; all values are in
+ * nanoseconds.
+ * <p>An instance of this class can be obtained with {@link Room#getEventLatencies()}. The returned histograms are live:
+ * they can be polled periodically to export them or to alert on lag.
+ */
+public final class EventLatencies {
+
+	/**
+	 * The stages an event goes through, from the chat server to the completion of a listener.
+	 */
+	public enum Stage {
+
+		/**
+		 * From the time the event was raised on the server to the time it was received on the WebSocket. The server only
+		 * gives the time of an event to the second, so this has a precision of one second.
+		 */
+		SERVER_TO_SOCKET,
+
+		/**
+		 * From the time the event was received to the time it was decoded, including the retrieval of its user and message.
+		 */
+		DECODE,
+
+		/**
+		 * From the time the event started to be dispatched to the time a listener started processing it.
+		 */
+		QUEUE,
+
+		/**
+		 * Execution time of a listener.
+		 */
+		LISTENER,
+
+		/**
+		 * From the time the event was raised on the server to the time a listener completed.
+		 */
+		END_TO_END;
+
+		private static final Stage[] VALUES = values();
+
+	}
+
+	private final Histogram[] roomHistograms = newHistograms();
+	private final ConcurrentMap<EventType<?>, Histogram[]> eventTypeHistograms = new ConcurrentHashMap<>();
+
+	EventLatencies() { }
+
+	/**
+	 * Returns the distribution of the given stage, for all the events of the room.
+	 * @param stage Stage to look for.
+	 * @return Live histogram of the latencies, in nanoseconds.
+	 */
+	public Histogram getDistribution(Stage stage) {
+		return roomHistograms[stage.ordinal()];
+	}
+
+	/**
+	 * Returns the distribution of the given stage, for the events of the given type.
+	 * @param eventType Type of event to look for.
+	 * @param stage Stage to look for.
+	 * @return Live histogram of the latencies, in nanoseconds, or <code>null</code> if no event of that type was received yet.
+	 */
+	public Histogram getDistribution(EventType<?> eventType, Stage stage) {
+		Histogram[] histograms = eventTypeHistograms.get(eventType);
+		return histograms == null ? null : histograms[stage.ordinal()];
+	}
+
+	/**
+	 * Returns the types of event for which distributions are kept.
+	 * @return Unmodifiable set of the types of event that were received.
+	 */
+	public Set<EventType<?>> getEventTypes() {
+		return Collections.unmodifiableSet(eventTypeHistograms.keySet());
+	}
+
+	/**
+	 * Records the latency of the given event up to its decoding.
+	 * @param event Decoded event.
+	 * @param receivedMillis Wall-clock time at which the event was received, in milliseconds since the epoch.
+	 */
+	void recordDecoded(Event event, long receivedMillis) {
+		long serverToSocket = Math.max(0, receivedMillis - event.getInstant().toEpochMilli()) * 1_000_000;
+		record(event, Stage.SERVER_TO_SOCKET, serverToSocket);
+		record(event, Stage.DECODE, event.getDecodedNanos() - event.getReceivedNanos());
+	}
+
+	/**
+	 * Records the latency of a listener that processed the given event.
+	 * @param event Event that was processed.
+	 * @param receivedMillis Wall-clock time at which the event was received, in milliseconds since the epoch.
+	 * @param listenerStartNanos Time at which the listener started.
+	 * @param listenerEndNanos Time at which the listener completed.
+	 */
+	void recordListener(Event event, long receivedMillis, long listenerStartNanos, long listenerEndNanos) {
+		record(event, Stage.QUEUE, listenerStartNanos - event.getDispatchNanos());
+		record(event, Stage.LISTENER, listenerEndNanos - listenerStartNanos);
+		long serverToSocket = Math.max(0, receivedMillis - event.getInstant().toEpochMilli()) * 1_000_000;
+		record(event, Stage.END_TO_END, serverToSocket + listenerEndNanos - event.getReceivedNanos());
+	}
+
+	private void record(Event event, Stage stage, long nanos) {
+		roomHistograms[stage.ordinal()].record(nanos);
+		EventType<Object> eventType = EventType.fromEvent(event);
+		if (eventType == null) return;
+		Histogram[] histograms = eventTypeHistograms.get(eventType);
+		if (histograms == null) {
+			histograms = eventTypeHistograms.computeIfAbsent(eventType, e -> newHistograms());
+		}
+		histograms[stage.ordinal()].record(nanos);
+	}
+
+	private static Histogram[] newHistograms() {
+		Histogram[] histograms = new Histogram[Stage.VALUES.length];
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new Histogram();
+		}
+		return histograms;
+	}
+
+}
@@ -0,0 +1,233 @@
+package org.sobotics.chatexchange.chat;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sobotics.chatexchange.chat.event.EventType;
+
+/**
+ * Subscription to a stream of chat events of a given type. Events offered to the subscription are buffered until the
+ * subscriber requests them; when the buffer is full, the {@link OverflowStrategy} applies.
+ * <p>Signals are delivered on the given executor, one at a time: a single task drains the buffer as long as there is demand,
+ * and a new task is only submitted once it finished. If the executor rejects the task, the subscriber is terminated on the
+ * calling thread instead.
+ * @param <T> Type of the events.
+ */
+final class EventSubscription<T> implements Subscription {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(EventSubscription.class);
+
+	private final EventType<T> eventType;
+	private final Subscriber<? super T> subscriber;
+	private final int bufferSize;
+	private final OverflowStrategy overflowStrategy;
+	private final Executor executor;
+	private final Object owner;
+	private final Consumer<EventSubscription<?>> onTerminate;
+
+	private final Queue<T> buffer = new ArrayDeque<>();
+	private final AtomicLong demand = new AtomicLong();
+	/**
+	 * Number of signals not yet handled by the drain task; the task runs when it goes from 0 to 1
+	 */
+	private final AtomicInteger pending = new AtomicInteger();
+	private boolean subscribed;
+	private volatile boolean cancelled;
+	// guarded by this
+	private boolean completed;
+	private Throwable error;
+
+	/**
+	 * Creates a subscription. It is started, calling {@link Subscriber#onSubscribe(Subscription)}, with {@link #start()}.
+	 * @param eventType Type of the events to deliver.
+	 * @param subscriber Subscriber to deliver the events to.
+	 * @param bufferSize Maximum number of events buffered until they are requested.
+	 * @param overflowStrategy What to do when the buffer is full.
+	 * @param executor Executor delivering the signals.
+	 * @param owner Object whose closing completes the subscription, see {@link #completeIfOwnedBy(Object)}.
+	 * @param onTerminate Called once when the subscription is cancelled, completed or failed, to stop offering it events.
+	 */
+	EventSubscription(EventType<T> eventType, Subscriber<? super T> subscriber, int bufferSize, OverflowStrategy overflowStrategy, Executor executor, Object owner, Consumer<EventSubscription<?>> onTerminate) {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("The buffer size must be positive, was " + bufferSize);
+		}
+		this.eventType = eventType;
+		this.subscriber = subscriber;
+		this.bufferSize = bufferSize;
+		this.overflowStrategy = overflowStrategy;
+		this.executor = executor;
+		this.owner = owner;
+		this.onTerminate = onTerminate;
+	}
+
+	EventType<T> eventType() {
+		return eventType;
+	}
+
+	void start() {
+		drain();
+	}
+
+	/**
+	 * Offers the given event to this subscription. It is ignored if it isn't of the subscribed type.
+	 * @param eventType Type of the event.
+	 * @param event Event to offer.
+	 */
+	void offer(EventType<?> eventType, Object event) {
+		if (cancelled || this.eventType != eventType) return;
+		@SuppressWarnings("unchecked") T eventCast = (T) event;
+		synchronized (this) {
+			if (completed || error != null) return;
+			if (buffer.size() < bufferSize) {
+				buffer.add(eventCast);
+			} else {
+				switch (overflowStrategy) {
+				case DROP_OLDEST:
+					buffer.poll();
+					buffer.add(eventCast);
+					break;
+				case DROP_LATEST:
+					break;
+				case ERROR:
+					buffer.clear();
+					error = new ChatOperationException("The subscriber to " + eventType + " events fell behind by more than " + bufferSize + " events");
+					break;
+				}
+			}
+		}
+		drain();
+	}
+
+	/**
+	 * Completes this subscription, after the buffered events are delivered, if it was created by the given owner.
+	 * @param closedOwner Owner being closed.
+	 */
+	void completeIfOwnedBy(Object closedOwner) {
+		if (owner != closedOwner) return;
+		synchronized (this) {
+			completed = true;
+		}
+		drain();
+	}
+
+	@Override
+	public void request(long n) {
+		if (n <= 0) {
+			synchronized (this) {
+				buffer.clear();
+				error = new IllegalArgumentException("The number of requested events must be positive, was " + n);
+			}
+		} else {
+			demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+		}
+		drain();
+	}
+
+	@Override
+	public void cancel() {
+		if (cancelled) return;
+		cancelled = true;
+		onTerminate.accept(this);
+		synchronized (this) {
+			buffer.clear();
+		}
+	}
+
+	private void drain() {
+		if (pending.getAndIncrement() != 0) return;
+		try {
+			executor.execute(this::drainLoop);
+		} catch (RejectedExecutionException e) {
+			// the owner is closed: nothing can be delivered anymore
+			terminate(e);
+		}
+	}
+
+	/**
+	 * Terminates the subscriber on the calling thread, because the executor rejected the drain task. As no drain task is
+	 * running, the calling thread is the only one signalling the subscriber: it still gets {@link Subscriber#onSubscribe}
+	 * first, then {@link Subscriber#onComplete()} if everything was delivered, or {@link Subscriber#onError(Throwable)}.
+	 */
+	private void terminate(RejectedExecutionException cause) {
+		try {
+			if (!subscribed) {
+				subscribed = true;
+				try {
+					subscriber.onSubscribe(this);
+				} catch (RuntimeException e) {
+					LOGGER.error("The subscriber to {} events failed on subscribe", eventType, e);
+					cancel();
+				}
+			}
+			if (cancelled) return;
+			boolean finished;
+			synchronized (this) {
+				finished = error == null && completed && buffer.isEmpty();
+			}
+			cancel();
+			if (finished) {
+				subscriber.onComplete();
+			} else {
+				subscriber.onError(new ChatOperationException("Cannot deliver the " + eventType + " events: their room or client was closed", cause));
+			}
+		} finally {
+			// terminated: the drains requested in the meantime have nothing left to do
+			pending.set(0);
+		}
+	}
+
+	private void drainLoop() {
+		int missed = 1;
+		do {
+			if (!subscribed) {
+				subscribed = true;
+				try {
+					subscriber.onSubscribe(this);
+				} catch (RuntimeException e) {
+					LOGGER.error("The subscriber to {} events failed on subscribe", eventType, e);
+					cancel();
+				}
+			}
+			while (!cancelled) {
+				T next = null;
+				Throwable failure;
+				boolean finished;
+				synchronized (this) {
+					failure = error;
+					finished = completed && buffer.isEmpty();
+					if (failure == null && !finished && demand.get() > 0) {
+						next = buffer.poll();
+					}
+				}
+				if (failure != null || finished) {
+					cancel();
+					if (failure != null) {
+						subscriber.onError(failure);
+					} else {
+						subscriber.onComplete();
+					}
+					break;
+				}
+				if (next == null) break;
+				demand.getAndUpdate(current -> current == Long.MAX_VALUE ? current : current - 1);
+				try {
+					subscriber.onNext(next);
+				} catch (RuntimeException e) {
+					LOGGER.error("The subscriber to {} events failed, cancelling its subscription", eventType, e);
+					cancel();
+				}
+			}
+			missed = pending.addAndGet(-missed);
+		} while (missed != 0);
+	}
+
+}
@@ -0,0 +1,64 @@
+package org.sobotics.chatexchange.chat;
+
+/**
+ * Limits the rate of the message events a room dispatches, so that a flooded room doesn't starve the other rooms of the
+ * process. Each room has a token bucket, and so has each user posting in it: an event is dispatched if both the bucket of
+ * the room and the bucket of its user have a token left, and is shed otherwise, according to the {@link ShedPolicy}.
+ * <p>Buckets refill continuously at the configured rate, and hold up to one minute's worth of events, so that short bursts
+ * are let through. Only the events about messages (posted, edited, starred, mentions and replies) are limited: users entering
+ * or leaving, deleted messages and kicks are always dispatched. The limits apply before the events are decoded, so shed
+ * events cost no request to the chat server.
+ * <p>Rooms notify their {@link Room#addLoadSheddingListener(java.util.function.Consumer) load shedding listeners} while they
+ * shed events. Flood control is enabled for all the rooms of a client with
+ * {@link StackExchangeClient#setFloodControl(FloodControl)}.
+ */
+public final class FloodControl {
+
+	private final int userEventsPerMinute, roomEventsPerMinute;
+	private final ShedPolicy shedPolicy;
+
+	/**
+	 * Creates a flood control with the given limits.
+	 * @param userEventsPerMinute Maximum number of message events per minute for a user in a room.
+	 * @param roomEventsPerMinute Maximum number of message events per minute for a room.
+	 * @param shedPolicy What to do with the events over the limits.
+	 */
+	public FloodControl(int userEventsPerMinute, int roomEventsPerMinute, ShedPolicy shedPolicy) {
+		if (userEventsPerMinute <= 0 || roomEventsPerMinute <= 0) {
+			throw new IllegalArgumentException("The limits must be positive, were " + userEventsPerMinute + " per user and " + roomEventsPerMinute + " per room");
+		}
+		this.userEventsPerMinute = userEventsPerMinute;
+		this.roomEventsPerMinute = roomEventsPerMinute;
+		this.shedPolicy = shedPolicy;
+	}
+
+	/**
+	 * Returns the maximum number of message events per minute for a user in a room.
+	 * @return Limit per user.
+	 */
+	public int getUserEventsPerMinute() {
+		return userEventsPerMinute;
+	}
+
+	/**
+	 * Returns the maximum number of message events per minute for a room.
+	 * @return Limit per room.
+	 */
+	public int getRoomEventsPerMinute() {
+		return roomEventsPerMinute;
+	}
+
+	/**
+	 * Returns what is done with the events over the limits.
+	 * @return Shed policy.
+	 */
+	public ShedPolicy getShedPolicy() {
+		return shedPolicy;
+	}
+
+	@Override
+	public String toString() {
+		return "FloodControl[userEventsPerMinute=" + userEventsPerMinute + ", roomEventsPerMinute=" + roomEventsPerMinute + ", shedPolicy=" + shedPolicy + "]";
+	}
+
+}
@@ -7,15 +7,45 @@ import java.util.Map;
 import org.jsoup.Connection;
 import org.jsoup.Connection.Method;
 import org.jsoup.Connection.Response;
+import org.jsoup.HttpStatusException;
 import org.jsoup.Jsoup;
+import org.sobotics.chatexchange.chat.metrics.ChatMetrics;
+import org.sobotics.chatexchange.chat.metrics.Counter;
+import org.sobotics.chatexchange.chat.metrics.Timer;
 
 /**
  * Client for raw HTTP requests.
- * <p>It takes a map of current cookies and updates them at each calls.
+ * <p>It takes the jar of the current cookies, sending those of the requested domain and storing the received ones at each call.
  * @author Tunaki
  */
 class HttpClient {
 
+	private static final ChatHost[] HOSTS = ChatHost.values();
+	private static final Endpoint[] ENDPOINTS = Endpoint.values();
+
+	private volatile Timer[][] requestTimers;
+	private volatile Counter errors;
+
+	HttpClient() {
+		setMetrics(ChatMetrics.NO_OP);
+	}
+
+	/**
+	 * Sets the metrics to report the requests to. Each request is timed per endpoint and chat host.
+	 * @param metrics Metrics to use.
+	 */
+	void setMetrics(ChatMetrics metrics) {
+		Timer[][] timers = new Timer[HOSTS.length + 1][ENDPOINTS.length];
+		for (int i = 0; i < timers.length; i++) {
+			ChatHost host = i == 0 ? null : HOSTS[i - 1];
+			for (Endpoint endpoint : ENDPOINTS) {
+				timers[i][endpoint.ordinal()] = metrics.timer(ChatMetrics.HTTP_REQUEST_PREFIX + endpoint.getKey(), host, 0);
+			}
+		}
+		requestTimers = timers;
+		errors = metrics.counter(ChatMetrics.HTTP_ERRORS, null, 0);
+	}
+
 	/**
 	 * Performs a HTTP GET to the given URL.
 	 * @param url URL to GET.
@@ -24,8 +54,22 @@ class HttpClient {
 	 * @return <code>Response</code> associated with the result of the request.
 	 * @throws IOException in case of errors
 	 */
-	public Response get(String url, Map<String, String> cookies, String... data) throws IOException {
-		return execute(Method.GET, url, cookies, false, null, null, null, data);
+	public Response get(String url, CookieJar cookies, String... data) throws IOException {
+		return execute(Method.GET, url, cookies, null, false, null, null, null, data);
+	}
+
+	/**
+	 * Performs a HTTP GET to the given URL, with the given headers. This can be used for conditional requests: the status
+	 * code of the response is then 304 if the resource wasn't modified.
+	 * @param url URL to GET.
+	 * @param cookies Cookies to send with the request.
+	 * @param headers Headers to send with the request.
+	 * @param data GET parameters.
+	 * @return <code>Response</code> associated with the result of the request.
+	 * @throws IOException in case of errors
+	 */
+	public Response get(String url, CookieJar cookies, Map<String, String> headers, String... data) throws IOException {
+		return execute(Method.GET, url, cookies, headers, false, null, null, null, data);
 	}
 
 	/**
@@ -36,12 +80,12 @@ class HttpClient {
 	 * @return <code>Response</code> associated with the result of the request.
 	 * @throws IOException in case of errors
 	 */
-	public Response post(String url, Map<String, String> cookies, String... data) throws IOException {
-		return execute(Method.POST, url, cookies, false, null, null, null, data);
+	public Response post(String url, CookieJar cookies, String... data) throws IOException {
+		return execute(Method.POST, url, cookies, null, false, null, null, null, data);
 	}
 
-	public Response postWithFile(String url, Map<String, String> cookies, String fileKey, String fileName, InputStream inputStream, String... data) throws IOException {
-		return execute(Method.POST, url, cookies, false, fileKey, fileName, inputStream, data);
+	public Response postWithFile(String url, CookieJar cookies, String fileKey, String fileName, InputStream inputStream, String... data) throws IOException {
+		return execute(Method.POST, url, cookies, null, false, fileKey, fileName, inputStream, data);
 	}
 
 	/**
@@ -53,18 +97,62 @@ class HttpClient {
 	 * @return <code>Response</code> associated with the result of the request.
 	 * @throws IOException in case of errors
 	 */
-	public Response postIgnoringErrors(String url, Map<String, String> cookies, String... data) throws IOException {
-		return execute(Method.POST, url, cookies, true, null, null, null, data);
+	public Response postIgnoringErrors(String url, CookieJar cookies, String... data) throws IOException {
+		return execute(Method.POST, url, cookies, null, true, null, null, null, data);
 	}
 
-	private Response execute(Method method, String url, Map<String, String> cookies, boolean ignoreErrors, String fileKey, String fileName, InputStream inputStream, String... data) throws IOException {
-		Connection connection = Jsoup.connect(url).timeout(10 * 1000).ignoreContentType(true).ignoreHttpErrors(ignoreErrors).method(method).cookies(cookies).userAgent("Mozilla").data(data);
+	private Response execute(Method method, String url, CookieJar cookies, Map<String, String> headers, boolean ignoreErrors, String fileKey, String fileName, InputStream inputStream, String... data) throws IOException {
+		Connection connection = Jsoup.connect(url).timeout(10 * 1000).ignoreContentType(true).ignoreHttpErrors(ignoreErrors).method(method).cookies(cookies.get(url)).userAgent("Mozilla").data(data);
+		if (headers != null) {
+			headers.forEach(connection::header);
+		}
 		if (fileKey != null) {
 			connection = connection.data(fileKey, fileName, inputStream);
 		}
-		Response response = connection.execute();
-		cookies.putAll(response.cookies());
+		Object jfrEvent = JfrEvents.beginHttpCall();
+		long start = System.nanoTime();
+		Response response = null;
+		int status = -1;
+		try {
+			response = connection.execute();
+			status = response.statusCode();
+			// error statuses are returned as responses when errors are ignored
+			if (status >= 400) {
+				errors.increment();
+			}
+		} catch (IOException e) {
+			if (e instanceof HttpStatusException) {
+				status = ((HttpStatusException) e).getStatusCode();
+			}
+			errors.increment();
+			throw e;
+		} finally {
+			requestTimers[hostIndex(url)][Endpoint.of(url).ordinal()].recordSince(start);
+			if (jfrEvent != null) {
+				JfrEvents.endHttpCall(jfrEvent, method.name(), url, status, response == null ? 0 : response.bodyAsBytes().length);
+			}
+		}
+		cookies.store(url, response.cookies());
 		return response;
 	}
 
+	/**
+	 * Returns the index of the chat host the given URL points to in the timers, either the chat server or its main site.
+	 * Index 0 is used for URLs that do not belong to a chat host.
+	 */
+	private static int hostIndex(String url) {
+		int authorityStart = url.indexOf("://") + 3;
+		int authorityEnd = Endpoint.pathStart(url);
+		if (authorityStart < 3 || authorityEnd < 0) return 0;
+		int authorityLength = authorityEnd - authorityStart;
+		for (ChatHost host : HOSTS) {
+			String name = host.getName();
+			if (authorityLength == name.length() && url.startsWith(name, authorityStart)
+					|| authorityLength == name.length() + 5 && url.startsWith("chat.", authorityStart) && url.startsWith(name, authorityStart + 5)) {
+				return host.ordinal() + 1;
+			}
+		}
+		return 0;
+	}
+
 }
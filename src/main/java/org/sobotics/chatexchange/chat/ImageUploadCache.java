@@ -0,0 +1,290 @@
+package org.sobotics.chatexchange.chat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of the images uploaded to chat, mapping the SHA-256 hash of their content to the URL they were uploaded to. Uploading
+ * an image whose content is already in the cache returns the cached URL without uploading it again, and concurrent uploads
+ * of the same content share a single upload.
+ * <p>The cache keeps a bounded number of entries, evicting the least recently used. It can be persisted to a properties file,
+ * so that it survives restarts: the file is loaded when the cache is created, and rewritten each time an image is uploaded,
+ * without holding up the lookups in the meantime.
+ * <p>The cache is used by all the rooms of a client once set with {@link StackExchangeClient#setImageUploadCache(ImageUploadCache)}.
+ */
+public final class ImageUploadCache {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ImageUploadCache.class);
+	private static final String HASH_ALGORITHM = "SHA-256";
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private final int maxEntries;
+	private final Path file;
+	private final Map<String, String> urls;
+	/**
+	 * Incremented each time the entries change, so that an older snapshot is never saved over a newer one; guarded by urls
+	 */
+	private long version;
+	private final Object saveLock = new Object();
+	// guarded by saveLock
+	private long savedVersion;
+	private final ConcurrentMap<String, SharedUpload> inFlight = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a cache kept in memory only.
+	 * @param maxEntries Maximum number of images to keep in the cache.
+	 */
+	public ImageUploadCache(int maxEntries) {
+		this(maxEntries, null);
+	}
+
+	/**
+	 * Creates a cache persisted to the given properties file. If the file exists, the cache is initialized with its content.
+	 * @param maxEntries Maximum number of images to keep in the cache.
+	 * @param file File to persist the cache to, or <code>null</code> to keep it in memory only.
+	 * @throws ChatOperationException If the file exists but cannot be read.
+	 */
+	public ImageUploadCache(int maxEntries, Path file) {
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException("The maximum number of entries must be positive, was " + maxEntries);
+		}
+		this.maxEntries = maxEntries;
+		this.file = file;
+		urls = new LinkedHashMap<String, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return size() > ImageUploadCache.this.maxEntries;
+			}
+		};
+		if (file != null && Files.exists(file)) {
+			Properties properties = new Properties();
+			try (InputStream is = Files.newInputStream(file)) {
+				properties.load(is);
+			} catch (IOException e) {
+				throw new ChatOperationException("Cannot read the image upload cache from " + file, e);
+			}
+			properties.stringPropertyNames().forEach(hash -> urls.put(hash, properties.getProperty(hash)));
+		}
+	}
+
+	/**
+	 * Returns the URL the image with the given content hash was uploaded to.
+	 * @param hash Hexadecimal SHA-256 hash of the content of the image.
+	 * @return URL of the image, or <code>null</code> if it isn't in the cache.
+	 */
+	public String get(String hash) {
+		synchronized (urls) {
+			return urls.get(hash);
+		}
+	}
+
+	/**
+	 * Returns the number of images in the cache.
+	 * @return Number of images in the cache.
+	 */
+	public int size() {
+		synchronized (urls) {
+			return urls.size();
+		}
+	}
+
+	/**
+	 * Removes all the images from the cache.
+	 */
+	public void clear() {
+		Map<String, String> snapshot;
+		long snapshotVersion;
+		synchronized (urls) {
+			urls.clear();
+			snapshot = new LinkedHashMap<>(urls);
+			snapshotVersion = ++version;
+		}
+		save(snapshot, snapshotVersion);
+	}
+
+	/**
+	 * Records that the image with the given content hash was uploaded to the given URL.
+	 * @param hash Hexadecimal SHA-256 hash of the content of the image.
+	 * @param url URL of the image.
+	 */
+	void put(String hash, String url) {
+		Map<String, String> snapshot;
+		long snapshotVersion;
+		synchronized (urls) {
+			if (url.equals(urls.put(hash, url)) || file == null) return;
+			snapshot = new LinkedHashMap<>(urls);
+			snapshotVersion = ++version;
+		}
+		save(snapshot, snapshotVersion);
+	}
+
+	/**
+	 * Returns the URL of the image with the given content hash, uploading it with the given uploader if it isn't in the cache.
+	 * If the same content is already being uploaded, its upload is shared instead.
+	 * <p>Each caller gets its own stage: cancelling it only stops waiting for the upload. The shared upload is aborted once
+	 * every caller waiting for it cancelled its stage.
+	 * @param hash Hexadecimal SHA-256 hash of the content of the image.
+	 * @param uploader Uploads the image and returns its URL. It is only called if no upload of the same content is in progress.
+	 * @param abort Aborts the upload started by the uploader.
+	 * @return URL of the image.
+	 */
+	CompletableFuture<String> upload(String hash, Supplier<CompletableFuture<String>> uploader, Runnable abort) {
+		while (true) {
+			String url = get(hash);
+			if (url != null) {
+				return CompletableFuture.completedFuture(url);
+			}
+			SharedUpload upload = new SharedUpload(abort);
+			CompletableFuture<String> waiter = upload.join();
+			SharedUpload existing = inFlight.putIfAbsent(hash, upload);
+			if (existing != null) {
+				CompletableFuture<String> existingWaiter = existing.join();
+				if (existingWaiter != null) return existingWaiter;
+				// every caller left the existing upload, which is being aborted
+				inFlight.remove(hash, existing);
+				continue;
+			}
+			url = get(hash);
+			if (url != null) {
+				inFlight.remove(hash, upload);
+				upload.result.complete(url);
+				return waiter;
+			}
+			upload.result.whenComplete((result, t) -> {
+				if (t == null) {
+					put(hash, result);
+				}
+				inFlight.remove(hash, upload);
+			});
+			uploader.get().whenComplete((result, t) -> {
+				if (t == null) {
+					upload.result.complete(result);
+				} else {
+					upload.result.completeExceptionally(t);
+				}
+			});
+			return waiter;
+		}
+	}
+
+	/**
+	 * Writes the given snapshot of the entries to the file, outside of the lock of the entries, unless a newer snapshot was
+	 * already written.
+	 */
+	private void save(Map<String, String> snapshot, long snapshotVersion) {
+		if (file == null) return;
+		synchronized (saveLock) {
+			if (snapshotVersion <= savedVersion) return;
+			Properties properties = new Properties();
+			properties.putAll(snapshot);
+			try {
+				Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+				try (OutputStream os = Files.newOutputStream(temp)) {
+					properties.store(os, "Images uploaded to chat, by SHA-256 hash of their content");
+				}
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				savedVersion = snapshotVersion;
+			} catch (IOException e) {
+				LOGGER.warn("Cannot save the image upload cache to {}", file, e);
+			}
+		}
+	}
+
+	/**
+	 * Upload shared by the callers uploading the same content, counting the callers still waiting for it.
+	 */
+	private static final class SharedUpload {
+
+		private final CompletableFuture<String> result = new CompletableFuture<>();
+		private final Runnable abort;
+		// guarded by this
+		private int waiters;
+		private boolean aborted;
+
+		private SharedUpload(Runnable abort) {
+			this.abort = abort;
+		}
+
+		/**
+		 * Adds a caller waiting for this upload.
+		 * @return Stage of the caller, or <code>null</code> if this upload is being aborted.
+		 */
+		private CompletableFuture<String> join() {
+			synchronized (this) {
+				if (aborted) return null;
+				waiters++;
+			}
+			CompletableFuture<String> waiter = new CompletableFuture<>();
+			result.whenComplete((url, t) -> {
+				if (t == null) {
+					waiter.complete(url);
+				} else {
+					waiter.completeExceptionally(t);
+				}
+			});
+			waiter.whenComplete((url, t) -> {
+				if (waiter.isCancelled()) leave();
+			});
+			return waiter;
+		}
+
+		private void leave() {
+			synchronized (this) {
+				if (--waiters > 0 || result.isDone()) return;
+				aborted = true;
+			}
+			abort.run();
+		}
+
+	}
+
+	/**
+	 * Creates a new digest to hash the content of images.
+	 * @return New SHA-256 digest.
+	 */
+	static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns the hexadecimal representation of the given hash.
+	 * @param hash Hash to convert.
+	 * @return Hexadecimal string, in lower case.
+	 */
+	static String toHex(byte[] hash) {
+		char[] chars = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++) {
+			chars[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+			chars[i * 2 + 1] = HEX_DIGITS[hash[i] & 0xF];
+		}
+		return new String(chars);
+	}
+
+	@Override
+	public String toString() {
+		return "ImageUploadCache[size=" + size() + ", maxEntries=" + maxEntries + (file == null ? "" : ", file=" + file) + "]";
+	}
+
+}
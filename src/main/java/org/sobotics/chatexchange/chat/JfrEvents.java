@@ -0,0 +1,44 @@
+package org.sobotics.chatexchange.chat;
+
+/**
+ * Hooks emitting JDK Flight Recorder events for the chat operations.
+ * <p>This is the Java 8 version of this class, where all the hooks do nothing. The multi-release jar contains a Java 11
+ * version, under <code>src/main/java11</code>, that emits the actual events. Both versions must keep the same methods.
+ * <p>Each <code>begin</code> method returns a token to pass to the corresponding <code>end</code> method; the token is
+ * <code>null</code> when the event is disabled, in which case the <code>end</code> method returns immediately.
+ */
+final class JfrEvents {
+
+	private JfrEvents() { }
+
+	static Object beginHttpCall() {
+		return null;
+	}
+
+	static void endHttpCall(Object token, String method, String url, int status, long bytes) { }
+
+	static Object beginThrottleWait() {
+		return null;
+	}
+
+	static void endThrottleWait(Object token, ChatHost host, int roomId, String url, long throttleSeconds) { }
+
+	static Object beginWebSocketFrame() {
+		return null;
+	}
+
+	static void endWebSocketFrame(Object token, ChatHost host, int roomId, int size, int rooms, int events) { }
+
+	static Object beginWebSocketReconnect() {
+		return null;
+	}
+
+	static void endWebSocketReconnect(Object token, ChatHost host, int roomId, long inactivitySeconds) { }
+
+	static Object beginListener() {
+		return null;
+	}
+
+	static void endListener(Object token, ChatHost host, int roomId, Object event, Object listener) { }
+
+}
@@ -0,0 +1,86 @@
+package org.sobotics.chatexchange.chat;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Report of the events a room shed because it was flooded. See {@link FloodControl}.
+ * <p>A room sends a report as soon as it starts shedding events, then every 10 seconds while it sheds events, with the
+ * events shed since the previous report. A last report, which isn't {@link #isActive() active}, is sent once no event was
+ * shed for 10 seconds.
+ */
+public final class LoadShedding {
+
+	private final int roomId;
+	private final ShedPolicy shedPolicy;
+	private final boolean active;
+	private final int shedEvents;
+	private final Map<Long, Integer> shedEventsByUser;
+	private final List<Long> shedMessageIds;
+
+	LoadShedding(int roomId, ShedPolicy shedPolicy, boolean active, int shedEvents, Map<Long, Integer> shedEventsByUser, List<Long> shedMessageIds) {
+		this.roomId = roomId;
+		this.shedPolicy = shedPolicy;
+		this.active = active;
+		this.shedEvents = shedEvents;
+		this.shedEventsByUser = Collections.unmodifiableMap(shedEventsByUser);
+		this.shedMessageIds = Collections.unmodifiableList(shedMessageIds);
+	}
+
+	/**
+	 * Returns the id of the room shedding events.
+	 * @return Id of the room.
+	 */
+	public int getRoomId() {
+		return roomId;
+	}
+
+	/**
+	 * Returns what the room does with the events it sheds.
+	 * @return Shed policy of the room.
+	 */
+	public ShedPolicy getShedPolicy() {
+		return shedPolicy;
+	}
+
+	/**
+	 * Tells whether the room is still shedding events.
+	 * @return <code>true</code> if the room is shedding events, <code>false</code> if this is the last report, sent after
+	 * no event was shed for 10 seconds.
+	 */
+	public boolean isActive() {
+		return active;
+	}
+
+	/**
+	 * Returns the number of events shed since the previous report.
+	 * @return Number of shed events.
+	 */
+	public int getShedEvents() {
+		return shedEvents;
+	}
+
+	/**
+	 * Returns the number of events shed since the previous report, by id of the user that raised them.
+	 * @return Unmodifiable map of the number of shed events per user.
+	 */
+	public Map<Long, Integer> getShedEventsByUser() {
+		return shedEventsByUser;
+	}
+
+	/**
+	 * Returns the ids of the messages the events shed since the previous report were about. They are only recorded with the
+	 * {@link ShedPolicy#SUMMARIZE} policy.
+	 * @return Unmodifiable list of message ids, empty with the other policies.
+	 */
+	public List<Long> getShedMessageIds() {
+		return shedMessageIds;
+	}
+
+	@Override
+	public String toString() {
+		return "LoadShedding[roomId=" + roomId + ", shedPolicy=" + shedPolicy + ", active=" + active + ", shedEvents=" + shedEvents + "]";
+	}
+
+}
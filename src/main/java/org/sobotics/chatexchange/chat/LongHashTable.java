@@ -0,0 +1,140 @@
+package org.sobotics.chatexchange.chat;
+
+import java.util.Arrays;
+
+/**
+ * Set of primitive longs, stored without boxing in an open-addressing table with linear probing. Removals shift the
+ * following entries back instead of leaving tombstones, so the table never degrades.
+ * <p>This class is not thread-safe: it is the storage of {@link ConcurrentLongSet} and {@link RecentLongWindow}, which guard
+ * it with a lock. {@link #contains(long)} never fails nor loops forever when racing with a writer, so that it can be used
+ * under an optimistic read lock, whose result is then validated.
+ */
+final class LongHashTable {
+
+	/**
+	 * Marks a free slot. The value 0 itself is tracked apart, with {@link #containsZero}.
+	 */
+	private static final long FREE = 0;
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] keys;
+	private boolean containsZero;
+	private int size;
+
+	LongHashTable(int expectedSize) {
+		keys = new long[capacityFor(expectedSize)];
+	}
+
+	boolean contains(long key) {
+		if (key == FREE) return containsZero;
+		long[] keys = this.keys;
+		int mask = keys.length - 1;
+		int index = index(key, mask);
+		for (int probes = 0; probes < keys.length; probes++) {
+			long k = keys[index];
+			if (k == key) return true;
+			if (k == FREE) return false;
+			index = (index + 1) & mask;
+		}
+		return false;
+	}
+
+	boolean add(long key) {
+		if (key == FREE) {
+			if (containsZero) return false;
+			containsZero = true;
+			size++;
+			return true;
+		}
+		int mask = keys.length - 1;
+		int index = index(key, mask);
+		while (keys[index] != FREE) {
+			if (keys[index] == key) return false;
+			index = (index + 1) & mask;
+		}
+		keys[index] = key;
+		size++;
+		if (size * 2 > keys.length) {
+			rehash(keys.length * 2);
+		}
+		return true;
+	}
+
+	boolean remove(long key) {
+		if (key == FREE) {
+			if (!containsZero) return false;
+			containsZero = false;
+			size--;
+			return true;
+		}
+		int mask = keys.length - 1;
+		int index = index(key, mask);
+		while (keys[index] != key) {
+			if (keys[index] == FREE) return false;
+			index = (index + 1) & mask;
+		}
+		// shift back the entries that were displaced by the removed one
+		int free = index;
+		int next = (free + 1) & mask;
+		while (keys[next] != FREE) {
+			int ideal = index(keys[next], mask);
+			if (((next - ideal) & mask) >= ((next - free) & mask)) {
+				keys[free] = keys[next];
+				free = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[free] = FREE;
+		size--;
+		return true;
+	}
+
+	int size() {
+		return size;
+	}
+
+	void clear() {
+		Arrays.fill(keys, FREE);
+		containsZero = false;
+		size = 0;
+	}
+
+	long[] toArray() {
+		long[] result = new long[size];
+		int i = 0;
+		if (containsZero) result[i++] = 0;
+		for (long key : keys) {
+			if (key != FREE) result[i++] = key;
+		}
+		return result;
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		long[] newKeys = new long[capacity];
+		int mask = capacity - 1;
+		for (long key : oldKeys) {
+			if (key == FREE) continue;
+			int index = index(key, mask);
+			while (newKeys[index] != FREE) {
+				index = (index + 1) & mask;
+			}
+			newKeys[index] = key;
+		}
+		keys = newKeys;
+	}
+
+	private static int index(long key, int mask) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+
+	private static int capacityFor(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity < expectedSize * 2 && capacity < 1 << 30) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+}
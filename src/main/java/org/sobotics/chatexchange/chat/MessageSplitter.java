@@ -0,0 +1,257 @@
+package org.sobotics.chatexchange.chat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits messages that are too long to be posted in chat into several parts.
+ * <p>The message is tokenized once, recording where it can be broken: line breaks, which are preferred, and spaces. Markdown
+ * links and inline code are never broken. When a part has no possible break, it is cut at the maximum length, outside of links
+ * and inline code.
+ * <p>Multi-line messages where every line is indented by 4 spaces (or a tab) are fixed-font blocks: they are only broken at
+ * line breaks, and a line that is too long is cut and continued on a new indented line, so that each part is still rendered
+ * as a fixed-font block.
+ * <p>Splitting runs in time linear with the length of the message.
+ */
+final class MessageSplitter {
+
+	private static final String FIXED_FONT_INDENT = "    ";
+
+	private MessageSplitter() { }
+
+	/**
+	 * Splits the given message into parts having at most the given length.
+	 * @param message Message to split.
+	 * @param maxPartLength Maximum length of a part.
+	 * @return List of the parts of the message, in order.
+	 * @throws ChatOperationException If the message cannot be split, because a link or inline code is longer than the
+	 * maximum length.
+	 */
+	static List<String> split(String message, int maxPartLength) {
+		if (message.length() <= maxPartLength) {
+			return Arrays.asList(message);
+		}
+		boolean fixedFont = isFixedFont(message);
+		if (fixedFont && maxPartLength <= FIXED_FONT_INDENT.length()) {
+			throw new ChatOperationException("Cannot send message: parts of " + maxPartLength + " characters are too short for a fixed-font block");
+		}
+		Tokens tokens = tokenize(message, fixedFont);
+		List<String> parts = new ArrayList<>();
+		int length = message.length();
+		int start = 0;
+		int newlineIndex = -1, spaceIndex = -1, spanIndex = 0;
+		boolean continuedLine = false;
+		while (start < length) {
+			String prefix = continuedLine ? FIXED_FONT_INDENT : "";
+			int limit = start + maxPartLength - prefix.length();
+			if (limit >= length) {
+				addPart(parts, prefix, message, start, length);
+				break;
+			}
+			// find the last line break, or space, at most at the limit: this part will end right before it
+			while (newlineIndex + 1 < tokens.newlines.size && tokens.newlines.values[newlineIndex + 1] <= limit) newlineIndex++;
+			while (spaceIndex + 1 < tokens.spaces.size && tokens.spaces.values[spaceIndex + 1] <= limit) spaceIndex++;
+			int newline = newlineIndex < 0 ? -1 : tokens.newlines.values[newlineIndex];
+			int space = spaceIndex < 0 ? -1 : tokens.spaces.values[spaceIndex];
+			int cut, next;
+			if (newline > start) {
+				cut = newline;
+				next = newline + 1;
+				continuedLine = false;
+			} else if (space > start) {
+				cut = space;
+				next = space + 1;
+			} else {
+				// no possible break: cut at the limit, but not inside a link, inline code or a surrogate pair
+				cut = limit;
+				while (spanIndex < tokens.spanStarts.size && tokens.spanEnds.values[spanIndex] <= cut) spanIndex++;
+				if (spanIndex < tokens.spanStarts.size && tokens.spanStarts.values[spanIndex] < cut) {
+					cut = tokens.spanStarts.values[spanIndex];
+				}
+				if (Character.isLowSurrogate(message.charAt(cut))) cut--;
+				if (cut <= start) {
+					throw new ChatOperationException("Cannot send message: it is longer than " + maxPartLength + " characters and cannot be broken into adequate parts");
+				}
+				next = cut;
+				continuedLine = fixedFont;
+			}
+			addPart(parts, prefix, message, start, cut);
+			start = next;
+		}
+		return parts;
+	}
+
+	private static void addPart(List<String> parts, String prefix, String message, int start, int end) {
+		// blank parts cannot be posted: they only happen between consecutive line breaks
+		for (int i = start; i < end; i++) {
+			if (!Character.isWhitespace(message.charAt(i))) {
+				parts.add(prefix + message.substring(start, end));
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Tells whether the given message is a fixed-font block, that is a multi-line message where every non-blank line is
+	 * indented by 4 spaces or a tab.
+	 */
+	private static boolean isFixedFont(String message) {
+		if (message.indexOf('\n') < 0) return false;
+		int lineStart = 0;
+		while (lineStart <= message.length()) {
+			int lineEnd = message.indexOf('\n', lineStart);
+			if (lineEnd < 0) lineEnd = message.length();
+			if (!isBlank(message, lineStart, lineEnd) && !message.startsWith(FIXED_FONT_INDENT, lineStart) && !message.startsWith("\t", lineStart)) {
+				return false;
+			}
+			lineStart = lineEnd + 1;
+		}
+		return true;
+	}
+
+	private static boolean isBlank(String message, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (!Character.isWhitespace(message.charAt(i))) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Records, in one pass, the positions of line breaks and spaces where the message can be broken, along with the bounds
+	 * of the spans that must not be broken. In fixed-font blocks, only line breaks are recorded.
+	 */
+	private static Tokens tokenize(String message, boolean fixedFont) {
+		Tokens tokens = new Tokens();
+		int length = message.length();
+		int lineEnd = -1;
+		// every '[' (resp. '`') before this index is known not to start a link (resp. inline code)
+		int noLinkBefore = 0, noCodeBefore = 0;
+		int i = 0;
+		while (i < length) {
+			char c = message.charAt(i);
+			if (i > lineEnd) {
+				lineEnd = message.indexOf('\n', i);
+				if (lineEnd < 0) lineEnd = length;
+			}
+			if (c == '\n') {
+				tokens.newlines.add(i);
+			} else if (fixedFont) {
+				i++;
+				continue;
+			} else if (c == ' ') {
+				tokens.spaces.add(i);
+			} else if (c == '[' && i >= noLinkBefore) {
+				int closingBracket = closingBracket(message, i + 1);
+				if (closingBracket < 0) {
+					noLinkBefore = length;
+				} else {
+					int linkEnd = linkEnd(message, closingBracket + 1);
+					if (closingBracket > i + 1 && linkEnd > 0) {
+						tokens.addSpan(i, linkEnd);
+						i = linkEnd;
+						continue;
+					}
+					// any '[' up to the closing bracket would be closed by it, and fail the same way
+					noLinkBefore = closingBracket;
+				}
+			} else if (c == '`' && i >= noCodeBefore) {
+				int closingBacktick = closingBacktick(message, i + 1, lineEnd);
+				if (closingBacktick < 0) {
+					noCodeBefore = lineEnd;
+				} else {
+					tokens.addSpan(i, closingBacktick + 1);
+					i = closingBacktick + 1;
+					continue;
+				}
+			}
+			i++;
+		}
+		return tokens;
+	}
+
+	/**
+	 * Returns the index of the bracket closing the text of a link, starting at the given index, or -1 if there is none.
+	 * Escaped brackets (<code>\]</code>) are part of the text.
+	 */
+	private static int closingBracket(String message, int from) {
+		int i = from;
+		while (i < message.length()) {
+			char c = message.charAt(i);
+			if (c == '\\' && i + 1 < message.length() && message.charAt(i + 1) == ']') {
+				i += 2;
+			} else if (c == ']') {
+				return i;
+			} else {
+				i++;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the index right after the target of a link, <code>(http://...)</code>, starting at the given index, or -1 if
+	 * there is no valid target there. Escaped parentheses are part of the URL, which cannot contain whitespace.
+	 */
+	private static int linkEnd(String message, int from) {
+		if (!message.startsWith("(", from)) return -1;
+		int i = from + 1;
+		if (message.startsWith("http:", i)) i += 5;
+		else if (message.startsWith("https:", i)) i += 6;
+		if (!message.startsWith("//", i)) return -1;
+		i += 2;
+		int urlStart = i;
+		while (i < message.length()) {
+			char c = message.charAt(i);
+			if (c == '\\' && i + 1 < message.length() && (message.charAt(i + 1) == ')' || message.charAt(i + 1) == '(')) {
+				i += 2;
+			} else if (c == ')') {
+				return i > urlStart ? i + 1 : -1;
+			} else if (c == '(' || Character.isWhitespace(c)) {
+				return -1;
+			} else {
+				i++;
+			}
+		}
+		return -1;
+	}
+
+	private static int closingBacktick(String message, int from, int lineEnd) {
+		for (int i = from; i < lineEnd; i++) {
+			if (message.charAt(i) == '`') return i;
+		}
+		return -1;
+	}
+
+	private static final class Tokens {
+
+		private final Positions newlines = new Positions();
+		private final Positions spaces = new Positions();
+		private final Positions spanStarts = new Positions();
+		private final Positions spanEnds = new Positions();
+
+		private void addSpan(int start, int end) {
+			spanStarts.add(start);
+			spanEnds.add(end);
+		}
+
+	}
+
+	/**
+	 * Growable list of increasing positions in the message.
+	 */
+	private static final class Positions {
+
+		private int[] values = new int[16];
+		private int size;
+
+		private void add(int position) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = position;
+		}
+
+	}
+
+}
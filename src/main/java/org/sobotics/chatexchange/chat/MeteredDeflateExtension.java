@@ -0,0 +1,63 @@
+package org.sobotics.chatexchange.chat;
+
+import java.util.List;
+
+import org.glassfish.tyrus.core.extension.ExtendedExtension;
+import org.glassfish.tyrus.core.frame.Frame;
+import org.glassfish.tyrus.ext.extension.deflate.PerMessageDeflateExtension;
+import org.sobotics.chatexchange.chat.metrics.Counter;
+
+/**
+ * The permessage-deflate WebSocket extension (RFC 7692), counting the frames received and the size of their payload as sent
+ * over the network, before they are inflated.
+ */
+final class MeteredDeflateExtension implements ExtendedExtension {
+
+	private final PerMessageDeflateExtension deflate = new PerMessageDeflateExtension();
+	private final Counter framesCounter, bytesCounter;
+
+	MeteredDeflateExtension(Counter framesCounter, Counter bytesCounter) {
+		this.framesCounter = framesCounter;
+		this.bytesCounter = bytesCounter;
+	}
+
+	@Override
+	public Frame processIncoming(ExtensionContext context, Frame frame) {
+		if (!frame.isControlFrame()) {
+			framesCounter.increment();
+			bytesCounter.increment(frame.getPayloadLength());
+		}
+		return deflate.processIncoming(context, frame);
+	}
+
+	@Override
+	public Frame processOutgoing(ExtensionContext context, Frame frame) {
+		return deflate.processOutgoing(context, frame);
+	}
+
+	@Override
+	public List<Parameter> onExtensionNegotiation(ExtensionContext context, List<Parameter> requestedParameters) {
+		return deflate.onExtensionNegotiation(context, requestedParameters);
+	}
+
+	@Override
+	public void onHandshakeResponse(ExtensionContext context, List<Parameter> responseParameters) {
+		deflate.onHandshakeResponse(context, responseParameters);
+	}
+
+	@Override
+	public void destroy(ExtensionContext context) {
+		deflate.destroy(context);
+	}
+
+	@Override
+	public String getName() {
+		return deflate.getName();
+	}
+
+	@Override
+	public List<Parameter> getParameters() {
+		return deflate.getParameters();
+	}
+
+}
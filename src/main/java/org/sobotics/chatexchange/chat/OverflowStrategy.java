@@ -0,0 +1,24 @@
+package org.sobotics.chatexchange.chat;
+
+/**
+ * What an event stream does when its subscriber doesn't request events as fast as they are received, and its buffer is full.
+ * See {@link Room#events(org.sobotics.chatexchange.chat.event.EventType, int, OverflowStrategy)}.
+ */
+public enum OverflowStrategy {
+
+	/**
+	 * The oldest buffered event is dropped to make room for the new one.
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * The new event is dropped.
+	 */
+	DROP_LATEST,
+
+	/**
+	 * The stream fails: the buffered events are dropped, and the subscriber receives a {@link ChatOperationException}.
+	 */
+	ERROR
+
+}
@@ -0,0 +1,32 @@
+package org.sobotics.chatexchange.chat;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs tasks on an unbounded executor, like one starting a virtual thread per task, while bounding how many of them run at
+ * once. Tasks waiting for a permit block their own thread, which is cheap for virtual threads.
+ */
+final class PermitExecutor implements Executor {
+
+	private final Executor executor;
+	private final Semaphore permits;
+
+	PermitExecutor(Executor executor, int maxConcurrentTasks) {
+		this.executor = executor;
+		this.permits = new Semaphore(maxConcurrentTasks);
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		executor.execute(() -> {
+			permits.acquireUninterruptibly();
+			try {
+				task.run();
+			} finally {
+				permits.release();
+			}
+		});
+	}
+
+}
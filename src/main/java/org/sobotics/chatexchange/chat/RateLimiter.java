@@ -0,0 +1,33 @@
+package org.sobotics.chatexchange.chat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Paces the chat operations made on a host. When the server throttles an operation ("You can perform this action again in
+ * N seconds"), every operation on that host is held until the throttle expires, instead of each of them hitting the throttle
+ * in turn.
+ * <p>There is one instance per chat host, shared by all the rooms joined on it.
+ */
+final class RateLimiter {
+
+	private final AtomicLong nextAllowedNanos = new AtomicLong(System.nanoTime());
+
+	/**
+	 * Returns how long to wait before an operation can be made.
+	 * @return Delay in nanoseconds, 0 if an operation can be made right now.
+	 */
+	long delayNanos() {
+		return Math.max(0, nextAllowedNanos.get() - System.nanoTime());
+	}
+
+	/**
+	 * Records that the server throttled an operation for the given number of seconds.
+	 * @param seconds Number of seconds to wait before the next operation.
+	 */
+	void throttle(long seconds) {
+		long allowedNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+		nextAllowedNanos.accumulateAndGet(allowedNanos, (current, allowed) -> allowed - current > 0 ? allowed : current);
+	}
+
+}
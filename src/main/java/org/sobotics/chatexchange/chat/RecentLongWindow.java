@@ -0,0 +1,93 @@
+package org.sobotics.chatexchange.chat;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Thread-safe window of the last primitive longs added, like the ids of the last messages seen. Once the window is full,
+ * adding a value evicts the oldest one.
+ * <p>Lookups are lock-free in the absence of concurrent writes, like in {@link ConcurrentLongSet}.
+ */
+final class RecentLongWindow {
+
+	private final StampedLock lock = new StampedLock();
+	private final LongHashTable table;
+	private final long[] ring;
+	private int head;
+	private int size;
+
+	/**
+	 * Creates a window holding at most the given number of values.
+	 * @param capacity Maximum number of values to keep.
+	 */
+	RecentLongWindow(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("The capacity must be positive, was " + capacity);
+		}
+		table = new LongHashTable(capacity);
+		ring = new long[capacity];
+	}
+
+	boolean contains(long value) {
+		long stamp = lock.tryOptimisticRead();
+		boolean contains = table.contains(value);
+		if (lock.validate(stamp)) {
+			return contains;
+		}
+		stamp = lock.readLock();
+		try {
+			return table.contains(value);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Adds the given value to the window, evicting the oldest value if it is full.
+	 * @param value Value to add.
+	 * @return <code>true</code> if the value was added, <code>false</code> if it was already in the window.
+	 */
+	boolean add(long value) {
+		long stamp = lock.writeLock();
+		try {
+			if (!table.add(value)) return false;
+			if (size == ring.length) {
+				table.remove(ring[head]);
+			} else {
+				size++;
+			}
+			ring[head] = value;
+			head = (head + 1) % ring.length;
+			return true;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Returns a snapshot of the values of this window, from the oldest to the most recent.
+	 * @return New array holding the values of this window.
+	 */
+	long[] toArray() {
+		long stamp = lock.readLock();
+		try {
+			long[] result = new long[size];
+			int start = size == ring.length ? head : 0;
+			for (int i = 0; i < size; i++) {
+				result[i] = ring[(start + i) % ring.length];
+			}
+			return result;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	int size() {
+		long stamp = lock.readLock();
+		try {
+			return size;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+}
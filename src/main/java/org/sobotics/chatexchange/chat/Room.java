@@ -2,32 +2,54 @@ package org.sobotics.chatexchange.chat;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.LongFunction;
 import java.util.function.LongPredicate;
 import java.util.function.Supplier;
 import java.util.regex.Matcher;
@@ -53,11 +75,16 @@ import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.parser.Parser;
 import org.jsoup.select.Elements;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sobotics.chatexchange.chat.event.Event;
 import org.sobotics.chatexchange.chat.event.EventType;
 import org.sobotics.chatexchange.chat.event.Events;
+import org.sobotics.chatexchange.chat.event.MessagePostedEvent;
+import org.sobotics.chatexchange.chat.metrics.ChatMetrics;
+import org.sobotics.chatexchange.chat.metrics.Counter;
+import org.sobotics.chatexchange.chat.metrics.Timer;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
@@ -71,7 +98,6 @@ public final class Room {
 	private static final String SUCCESS = "ok";
 	private static final Pattern TRY_AGAIN_PATTERN = Pattern.compile("You can perform this action again in (\\d+) seconds");
 	private static final Pattern CURRENT_USERS_PATTERN = Pattern.compile("\\{id:\\s?(\\d+),");
-	private static final Pattern MARKDOWN_LINK_PATTERN = Pattern.compile("\\[(\\\\]|[^\\]])+\\]\\((https?:)?//(\\\\\\)|\\\\\\(|[^\\s)(])+\\)"); // oh dear god
 	private static final Pattern FAILED_UPLOAD_PATTERN = Pattern.compile("var error = '(.+)';");
 	private static final Pattern SUCCESS_UPLOAD_PATTERN = Pattern.compile("var result = '(.+)';");
 	private static final int NUMBER_OF_RETRIES_ON_THROTTLE = 5;
@@ -79,48 +105,222 @@ public final class Room {
 	private static final int EDIT_WINDOW_SECONDS = 115;
 	private static final int WEB_SOCKET_RESTART_SECONDS = 30;
 	private static final int MAX_CHAT_MESSAGE_LENGTH = 500;
+	private static final String ALREADY_DELETED = "already been deleted";
+	private static final String EDIT_WINDOW_PASSED = "too late to edit";
+	private static final int MAX_KNOWN_DELETED_MESSAGES = 10_000;
+	private static final int MAX_SENT_MESSAGES = 1_000;
+	private static final int MAX_CONCURRENT_UPLOADS = 2;
+	/**
+	 * States of the stream of an image upload that may be shared: not used yet, read by the upload, or closed unused
+	 */
+	private static final int STREAM_IDLE = 0, STREAM_UPLOADING = 1, STREAM_CLOSED = 2;
+	private static final int USER_CACHE_SECONDS = 300;
+	private static final int USER_INFO_CHUNK_SIZE = 100;
+	private static final int MAX_CACHED_USERS = 10_000;
+	private static final int THUMBS_MAX_AGE_SECONDS = 3600;
+	private static final int CHECKPOINT_SECONDS = 60;
+	private static final int CHECKPOINT_MAX_AGE_SECONDS = 3600;
+	private static final int LOAD_SHEDDING_REPORT_SECONDS = 10;
+	static final int EVENT_STREAM_BUFFER_SIZE = 256;
 
 	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
-	private final ExecutorService eventExecutor = Executors.newCachedThreadPool();
+	/**
+	 * Chat operations waiting to be posted, in order, and whether a task posting them is scheduled; guarded by the queue
+	 */
+	private final Queue<PendingPost> pendingPosts = new ArrayDeque<>();
+	private boolean drainingPosts;
+	private volatile ExecutorService eventExecutor;
+	/**
+	 * Closes the time windows of the batch listeners, apart from the executor of this room, which can be busy waiting for the
+	 * throttle of the chat operations; guarded by this
+	 */
+	private ScheduledExecutorService batchScheduler;
+	private final ThreadPoolExecutor uploadExecutor = new ThreadPoolExecutor(MAX_CONCURRENT_UPLOADS, MAX_CONCURRENT_UPLOADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
 
 	private Session webSocketSession;
 	private LocalDateTime lastWebsocketMessageDate = LocalDateTime.now();
 	private Map<EventType<Object>, List<Consumer<Object>>> chatEventListeners = new HashMap<>();
+	private final TriggerRouter<MessagePostedEvent> triggerRouter = new TriggerRouter<>();
 
 	private int roomId;
 	private ChatHost host;
 	private String fkey, hostUrlBase;
 
 	private HttpClient httpClient;
-	private Map<String, String> cookies;
+	private final Executor ioExecutor;
+	private final CookieJar cookies;
+	private final RateLimiter rateLimiter;
+	private volatile ImageUploadCache imageUploadCache;
+	private volatile EventDeduplicator eventDeduplicator;
+	private volatile AdmissionControl admissionControl;
+	private final List<Consumer<LoadShedding>> loadSheddingListeners = new CopyOnWriteArrayList<>();
+	private final List<EventSubscription<?>> eventSubscriptions = new CopyOnWriteArrayList<>();
+	private final List<EventBatcher> eventBatchers = new CopyOnWriteArrayList<>();
+	private volatile EventBus eventBus;
+	/**
+	 * Listeners of the client applying to this room, only used by the WebSocket thread, and the executor running them in order
+	 */
+	private EventBus.View eventBusView;
+	private volatile Executor eventBusExecutor;
+	private final Path checkpointFile;
+	private final RoomMode mode;
+	private final ThreadMode threadMode;
+	private volatile boolean webSocketCompression;
+	/**
+	 * Position in the event stream of this room, and id of the last event dispatched, saved in the checkpoints. Both only
+	 * advance once the events of a frame were decoded and dispatched.
+	 */
+	private volatile long eventCursor, lastEventId;
+	/**
+	 * Position in the event stream to resume from, and id of the last event processed, when resuming from a checkpoint
+	 */
+	private volatile long resumeEventCursor, resumeAfterEventId;
+	private volatile long pingableSyncedAtMillis;
 
 	private boolean hasLeft = false;
 
-	private List<Long> pingableUserIds;
-	private Set<Long> currentUserIds = new HashSet<>();
+	private volatile ConcurrentLongSet pingableUserIds = new ConcurrentLongSet();
+	private volatile ConcurrentLongSet currentUserIds = new ConcurrentLongSet();
+	private final ConcurrentMap<Long, CachedUser> userCache = new ConcurrentHashMap<>();
+	private volatile CachedThumbs thumbs;
+	private final Object thumbsLock = new Object();
+	/**
+	 * Incremented each time the thumbs change, making the cached ones stale
+	 */
+	private final AtomicLong thumbsGeneration = new AtomicLong();
+	private final RecentLongWindow deletedMessageIds = new RecentLongWindow(MAX_KNOWN_DELETED_MESSAGES);
+	private final SentMessageLedger sentMessages = new SentMessageLedger(MAX_SENT_MESSAGES);
+	/**
+	 * Id of the current user, learnt from the first message sent by this room seen in chat, or -1 while unknown
+	 */
+	private volatile long currentUserId = -1;
+
+	private final Timer postTimer, eventDecodeTimer, eventLagTimer, listenerTimer;
+	private final Counter postThrottledCounter, postFailedCounter, webSocketConnectedCounter, webSocketConnectFailedCounter,
+			webSocketClosedCounter, webSocketReconnectedCounter,
+			webSocketFramesCounter, webSocketBytesCounter, webSocketInflatedBytesCounter, eventFramesCounter, eventsReceivedCounter, eventsDuplicateCounter, eventsShedCounter, listenerFailedCounter;
+	private final AtomicInteger pendingListeners = new AtomicInteger();
+	private final EventLatencies eventLatencies = new EventLatencies();
 
-	Room(ChatHost host, int roomId, HttpClient httpClient, Map<String, String> cookies) {
+	Room(ChatHost host, int roomId, HttpClient httpClient, Executor ioExecutor, CookieJar cookies, ChatMetrics metrics, RateLimiter rateLimiter, Path checkpointFile, RoomMode mode, ThreadMode threadMode, boolean webSocketCompression) {
 		this.roomId = roomId;
+		this.webSocketCompression = webSocketCompression;
+		this.mode = mode;
+		this.threadMode = threadMode;
 		this.host = host;
 		hostUrlBase = host.getBaseUrl();
 		this.httpClient = httpClient;
-		this.cookies = new HashMap<>(cookies);
+		this.ioExecutor = ioExecutor;
+		this.cookies = cookies;
+		this.rateLimiter = rateLimiter;
+		this.checkpointFile = checkpointFile;
+		uploadExecutor.allowCoreThreadTimeOut(true);
+		postTimer = metrics.timer(ChatMetrics.ROOM_POST, host, roomId);
+		postThrottledCounter = metrics.counter(ChatMetrics.ROOM_POST_THROTTLED, host, roomId);
+		postFailedCounter = metrics.counter(ChatMetrics.ROOM_POST_FAILED, host, roomId);
+		webSocketConnectedCounter = metrics.counter(ChatMetrics.WEB_SOCKET_CONNECTED, host, roomId);
+		webSocketConnectFailedCounter = metrics.counter(ChatMetrics.WEB_SOCKET_CONNECT_FAILED, host, roomId);
+		webSocketClosedCounter = metrics.counter(ChatMetrics.WEB_SOCKET_CLOSED, host, roomId);
+		webSocketReconnectedCounter = metrics.counter(ChatMetrics.WEB_SOCKET_RECONNECTED, host, roomId);
+		webSocketFramesCounter = metrics.counter(ChatMetrics.WEB_SOCKET_FRAMES, host, roomId);
+		webSocketBytesCounter = metrics.counter(ChatMetrics.WEB_SOCKET_BYTES_RECEIVED, host, roomId);
+		webSocketInflatedBytesCounter = metrics.counter(ChatMetrics.WEB_SOCKET_BYTES_INFLATED, host, roomId);
+		eventFramesCounter = metrics.counter(ChatMetrics.EVENT_FRAMES, host, roomId);
+		eventsReceivedCounter = metrics.counter(ChatMetrics.EVENTS_RECEIVED, host, roomId);
+		eventsDuplicateCounter = metrics.counter(ChatMetrics.EVENTS_DUPLICATE, host, roomId);
+		eventsShedCounter = metrics.counter(ChatMetrics.EVENTS_SHED, host, roomId);
+		eventDecodeTimer = metrics.timer(ChatMetrics.EVENT_DECODE, host, roomId);
+		eventLagTimer = metrics.timer(ChatMetrics.EVENT_LAG, host, roomId);
+		listenerTimer = metrics.timer(ChatMetrics.LISTENER_EXECUTION, host, roomId);
+		listenerFailedCounter = metrics.counter(ChatMetrics.LISTENER_FAILED, host, roomId);
+		metrics.gauge(ChatMetrics.LISTENER_PENDING, host, roomId, pendingListeners::get);
 		executeAndSchedule(() -> fkey = retrieveFKey(roomId), 1);
-		executeAndSchedule(this::syncPingableUsers, 24);
-		syncCurrentUsers();
+		if (!mode.listens()) {
+			// the users are fetched when asked for, see getPingableUsers() and getCurrentUsers()
+			return;
+		}
+		RoomCheckpoint checkpoint = readCheckpoint();
+		long pingableAgeMillis = checkpoint == null ? Long.MAX_VALUE : System.currentTimeMillis() - checkpoint.pingableSyncedAtMillis;
+		if (pingableAgeMillis >= 0 && pingableAgeMillis < TimeUnit.HOURS.toMillis(24)) {
+			pingableUserIds = setOf(checkpoint.pingableUserIds);
+			pingableSyncedAtMillis = checkpoint.pingableSyncedAtMillis;
+			executor.scheduleAtFixedRate(this::syncPingableUsers, TimeUnit.HOURS.toMillis(24) - pingableAgeMillis, TimeUnit.HOURS.toMillis(24), TimeUnit.MILLISECONDS);
+		} else {
+			executeAndSchedule(this::syncPingableUsers, 24);
+		}
+		long checkpointAgeMillis = checkpoint == null ? Long.MAX_VALUE : System.currentTimeMillis() - checkpoint.savedAtMillis;
+		if (checkpoint != null && checkpoint.eventCursor > 0 && checkpointAgeMillis >= 0 && checkpointAgeMillis < TimeUnit.SECONDS.toMillis(CHECKPOINT_MAX_AGE_SECONDS)) {
+			// the events missed since the checkpoint are replayed by the server, keeping the users present up to date
+			LOGGER.debug("Resuming room {} from its checkpoint of {} seconds ago", roomId, TimeUnit.MILLISECONDS.toSeconds(checkpointAgeMillis));
+			currentUserIds = setOf(checkpoint.currentUserIds);
+			eventCursor = resumeEventCursor = checkpoint.eventCursor;
+			lastEventId = resumeAfterEventId = checkpoint.lastEventId;
+			for (long messageId : checkpoint.deletedMessageIds) {
+				deletedMessageIds.add(messageId);
+			}
+		} else {
+			syncCurrentUsers();
+		}
 		initWebSocket();
+		if (checkpointFile != null) {
+			executor.scheduleAtFixedRate(this::writeCheckpoint, CHECKPOINT_SECONDS, CHECKPOINT_SECONDS, TimeUnit.SECONDS);
+		}
+		executor.scheduleAtFixedRate(() -> {
+			AdmissionControl admission = admissionControl;
+			if (admission != null) admission.tick(System.nanoTime(), this::reportLoadShedding);
+		}, LOAD_SHEDDING_REPORT_SECONDS, LOAD_SHEDDING_REPORT_SECONDS, TimeUnit.SECONDS);
 		executor.scheduleAtFixedRate(() -> {
-			if (ChronoUnit.SECONDS.between(lastWebsocketMessageDate, LocalDateTime.now()) > WEB_SOCKET_RESTART_SECONDS) {
+			long inactivitySeconds = ChronoUnit.SECONDS.between(lastWebsocketMessageDate, LocalDateTime.now());
+			if (inactivitySeconds > WEB_SOCKET_RESTART_SECONDS) {
 				LOGGER.debug("Rebooting the WebSocket connection after {} seconds of inactivity", WEB_SOCKET_RESTART_SECONDS);
+				webSocketReconnectedCounter.increment();
+				Object jfrEvent = JfrEvents.beginWebSocketReconnect();
 				closeWebSocket();
 				try {
 					Thread.sleep(3000); // just wait a little for the server to really understand we closed the connection
 				} catch (InterruptedException e) { }
 				initWebSocket();
+				JfrEvents.endWebSocketReconnect(jfrEvent, host, roomId, inactivitySeconds);
 			}
 		}, WEB_SOCKET_RESTART_SECONDS, WEB_SOCKET_RESTART_SECONDS, TimeUnit.SECONDS);
-		addEventListener(EventType.USER_ENTERED, e -> currentUserIds.add(e.getUserId()));
-		addEventListener(EventType.USER_LEFT, e -> currentUserIds.remove(e.getUserId()));
+	}
+
+	private RoomCheckpoint readCheckpoint() {
+		if (checkpointFile == null) return null;
+		RoomCheckpoint checkpoint;
+		try {
+			checkpoint = RoomCheckpoint.read(checkpointFile);
+		} catch (IOException e) {
+			LOGGER.warn("Cannot read the checkpoint of room {} from {}, starting without it", roomId, checkpointFile, e);
+			return null;
+		}
+		if (checkpoint != null && (checkpoint.host != host || checkpoint.roomId != roomId)) {
+			LOGGER.warn("The checkpoint {} is for room {} on {}, ignoring it", checkpointFile, checkpoint.roomId, checkpoint.host);
+			return null;
+		}
+		return checkpoint;
+	}
+
+	/**
+	 * Saves the state of this room to its checkpoint file, so that it can resume from it after a restart.
+	 */
+	private void writeCheckpoint() {
+		RoomCheckpoint checkpoint = new RoomCheckpoint(host, roomId, System.currentTimeMillis(), eventCursor, lastEventId, pingableSyncedAtMillis,
+				currentUserIds.toArray(), pingableUserIds.toArray(), deletedMessageIds.toArray());
+		try {
+			checkpoint.write(checkpointFile);
+			LOGGER.trace("Checkpoint of room {} written to {}", roomId, checkpointFile);
+		} catch (IOException e) {
+			LOGGER.warn("Cannot write the checkpoint of room {} to {}", roomId, checkpointFile, e);
+		}
+	}
+
+	private static ConcurrentLongSet setOf(long[] values) {
+		ConcurrentLongSet set = new ConcurrentLongSet(values.length);
+		for (long value : values) {
+			set.add(value);
+		}
+		return set;
 	}
 
 	private void executeAndSchedule(Runnable action, int rate) {
@@ -129,33 +329,205 @@ public final class Room {
 	}
 
 	private JsonElement post(String url, String... data) {
-		return post(NUMBER_OF_RETRIES_ON_THROTTLE, url, data);
+		long start = System.nanoTime();
+		try {
+			return post(NUMBER_OF_RETRIES_ON_THROTTLE, url, data);
+		} catch (ChatOperationException e) {
+			postFailedCounter.increment();
+			throw e;
+		} finally {
+			postTimer.recordSince(start);
+		}
 	}
 
 	private JsonElement post(int retryCount, String url, String... data) {
-		Response response;
-		try {
-			response = httpClient.postIgnoringErrors(url, cookies, withFkey(data));
-		} catch (IOException e) {
-			throw new ChatOperationException(e);
+		long delay = rateLimiter.delayNanos();
+		if (delay > 0) {
+			Object jfrEvent = JfrEvents.beginThrottleWait();
+			try {
+				TimeUnit.NANOSECONDS.sleep(delay);
+			} catch (InterruptedException e) { }
+			JfrEvents.endThrottleWait(jfrEvent, host, roomId, url, TimeUnit.NANOSECONDS.toSeconds(delay));
 		}
+		Response response = postOnce(url, data);
 		String body = response.body();
 		if (response.statusCode() == 200) {
 			return new JsonParser().parse(body);
 		}
-		Matcher matcher = TRY_AGAIN_PATTERN.matcher(body);
-		if (retryCount > 0 && matcher.find()) {
-			long throttle = Long.parseLong(matcher.group(1));
+		long throttle = throttleSeconds(body);
+		if (retryCount > 0 && throttle >= 0) {
 			LOGGER.debug("Tried to POST to URL {} with data {} but was throttled, retrying in {} seconds", url, data, throttle);
-			try {
-				Thread.sleep(1000 * throttle);
-			} catch (InterruptedException e) { }
+			postThrottledCounter.increment();
+			rateLimiter.throttle(throttle);
 			return post(retryCount - 1, url, data);
 		} else {
 			throw new ChatOperationException("The chat operation failed with the message: " + body);
 		}
 	}
 
+	/**
+	 * Performs the given chat operation asynchronously. Like {@link #post(String, String...)}, throttled operations are retried,
+	 * but the retries are scheduled once the throttle of the host expired, so no thread is blocked while waiting.
+	 * @param url URL to POST to.
+	 * @param data POST parameters, without the fkey.
+	 * @return A future holding the JSON result of the operation.
+	 */
+	private CompletableFuture<JsonElement> postAsync(String url, String... data) {
+		PendingPost post = new PendingPost(url, data);
+		enqueuePosts(Collections.singletonList(post));
+		return post.future;
+	}
+
+	/**
+	 * Queues the given chat operations, one after the other. The operations of a room are posted in the order they were
+	 * queued, one at a time: the given operations are queued at once, so that no other operation is posted between them.
+	 * <p>An operation that is throttled keeps its place at the head of the queue until it is retried. An operation whose
+	 * future is already completed, for example because it was cancelled, is skipped.
+	 */
+	private void enqueuePosts(List<PendingPost> posts) {
+		if (!mode.sends()) {
+			ChatOperationException e = new ChatOperationException("Cannot perform the operation in room " + roomId + ": it was joined in " + mode + " mode");
+			posts.forEach(post -> finishPost(post, null, e));
+			return;
+		}
+		boolean schedule;
+		synchronized (pendingPosts) {
+			pendingPosts.addAll(posts);
+			schedule = !drainingPosts;
+			drainingPosts = true;
+		}
+		if (schedule) {
+			scheduleDrainPosts(0);
+		}
+	}
+
+	private void scheduleDrainPosts(long delayNanos) {
+		try {
+			executor.schedule(this::drainPosts, delayNanos, TimeUnit.NANOSECONDS);
+		} catch (RejectedExecutionException e) {
+			List<PendingPost> posts;
+			synchronized (pendingPosts) {
+				posts = new ArrayList<>(pendingPosts);
+				pendingPosts.clear();
+				drainingPosts = false;
+			}
+			ChatOperationException failure = new ChatOperationException("Cannot perform the operation: room " + roomId + " was left", e);
+			posts.forEach(post -> finishPost(post, null, failure));
+		}
+	}
+
+	/**
+	 * Posts the operation at the head of the queue, then schedules the next one. Each operation runs as its own task on the
+	 * executor of the room, so that its other tasks run in between.
+	 */
+	private void drainPosts() {
+		PendingPost post;
+		synchronized (pendingPosts) {
+			while ((post = pendingPosts.peek()) != null && post.future.isDone()) {
+				pendingPosts.poll();
+			}
+			if (post == null) {
+				drainingPosts = false;
+				return;
+			}
+		}
+		long delay = rateLimiter.delayNanos();
+		if (delay > 0) {
+			// the host is throttled: the operation waits at the head of the queue
+			Object jfrEvent = JfrEvents.beginThrottleWait();
+			String url = post.url;
+			try {
+				executor.schedule(() -> {
+					JfrEvents.endThrottleWait(jfrEvent, host, roomId, url, TimeUnit.NANOSECONDS.toSeconds(delay));
+					drainPosts();
+				}, delay, TimeUnit.NANOSECONDS);
+			} catch (RejectedExecutionException e) {
+				scheduleDrainPosts(delay);
+			}
+			return;
+		}
+		JsonElement result = null;
+		Throwable failure = null;
+		try {
+			Response response = postOnce(post.url, post.data);
+			String body = response.body();
+			if (response.statusCode() == 200) {
+				result = new JsonParser().parse(body);
+			} else {
+				long throttle = throttleSeconds(body);
+				if (post.retries > 0 && throttle >= 0) {
+					LOGGER.debug("Tried to POST to URL {} with data {} but was throttled, retrying in {} seconds", post.url, post.data, throttle);
+					postThrottledCounter.increment();
+					rateLimiter.throttle(throttle);
+					post.retries--;
+					scheduleDrainPosts(0);
+					return;
+				}
+				failure = new ChatOperationException("The chat operation failed with the message: " + body);
+			}
+		} catch (RuntimeException e) {
+			failure = e;
+		}
+		synchronized (pendingPosts) {
+			pendingPosts.poll();
+		}
+		finishPost(post, result, failure);
+		scheduleDrainPosts(0);
+	}
+
+	private void finishPost(PendingPost post, JsonElement result, Throwable failure) {
+		if (post.future.isDone()) {
+			// skipped, like the remaining parts of a message after one failed
+			return;
+		}
+		if (failure != null) {
+			postFailedCounter.increment();
+			post.future.completeExceptionally(failure);
+		} else {
+			post.future.complete(result);
+		}
+		postTimer.recordSince(post.queuedNanos);
+	}
+
+	/**
+	 * A chat operation waiting in the queue of the room.
+	 */
+	private static final class PendingPost {
+
+		private final String url;
+		private final String[] data;
+		private final CompletableFuture<JsonElement> future = new CompletableFuture<>();
+		private final long queuedNanos = System.nanoTime();
+		/**
+		 * Number of retries left if the operation is throttled, only used by the executor of the room
+		 */
+		private int retries = NUMBER_OF_RETRIES_ON_THROTTLE;
+
+		private PendingPost(String url, String[] data) {
+			this.url = url;
+			this.data = data;
+		}
+
+	}
+
+	private Response postOnce(String url, String... data) {
+		try {
+			return httpClient.postIgnoringErrors(url, cookies, withFkey(data));
+		} catch (IOException e) {
+			throw new ChatOperationException(e);
+		}
+	}
+
+	/**
+	 * Returns the number of seconds the server asked to wait before retrying, if the given response body is a throttle.
+	 * @param body Body of the response to a chat operation.
+	 * @return Number of seconds to wait, or -1 if the operation wasn't throttled.
+	 */
+	private static long throttleSeconds(String body) {
+		Matcher matcher = TRY_AGAIN_PATTERN.matcher(body);
+		return matcher.find() ? Long.parseLong(matcher.group(1)) : -1;
+	}
+
 	private String[] withFkey(String[] data) {
 		String[] dataWithFKey = new String[data.length + 2];
 		dataWithFKey[0] = "fkey";
@@ -179,10 +551,17 @@ public final class Room {
 		String websocketUrl;
 		try {
 			websocketUrl = post(hostUrlBase + "/ws-auth", "roomid", String.valueOf(roomId)).getAsJsonObject().get("url").getAsString();
-			String time = post(hostUrlBase + "/chats/" + roomId + "/events").getAsJsonObject().get("time").getAsString();
-			websocketUrl += "?l=" + time;
+			long resumeCursor = resumeEventCursor;
+			if (resumeCursor > 0) {
+				resumeEventCursor = 0;
+				websocketUrl += "?l=" + resumeCursor;
+			} else {
+				String time = post(hostUrlBase + "/chats/" + roomId + "/events").getAsJsonObject().get("time").getAsString();
+				websocketUrl += "?l=" + time;
+			}
 		} catch (ChatOperationException e) {
 			LOGGER.error("Error while retrieving WebSocket information for room {}. There will be no response on chat events!", roomId, e);
+			webSocketConnectFailedCounter.increment();
 			return;
 		}
 		LOGGER.debug("Connecting to chat WebSocket at URL {} for room {}", websocketUrl, roomId);
@@ -194,12 +573,18 @@ public final class Room {
 				headers.put("Origin", Arrays.asList(hostUrlBase));
 			}
 		});
+		if (webSocketCompression) {
+			configBuilder.extensions(Collections.singletonList(new MeteredDeflateExtension(webSocketFramesCounter, webSocketBytesCounter)));
+		}
 		client.getProperties().put(ClientProperties.RETRY_AFTER_SERVICE_UNAVAILABLE, true);
 		try {
 			webSocketSession = client.connectToServer(new Endpoint() {
 				@Override
 				public void onOpen(Session session, EndpointConfig config) {
-					session.addMessageHandler(String.class, Room.this::handleChatEvent);
+					// the server can decline compression, in which case the frames are counted as they are read
+					boolean compressed = !session.getNegotiatedExtensions().isEmpty();
+					LOGGER.debug("WebSocket of room {} opened, compressed: {}", roomId, compressed);
+					session.addMessageHandler(Reader.class, reader -> handleChatEvent(reader, compressed));
 				}
 				@Override
 				public void onError(Session session, Throwable thr) {
@@ -207,31 +592,216 @@ public final class Room {
 				}
 			}, configBuilder.build(), new URI(websocketUrl));
 		} catch (DeploymentException | URISyntaxException | IOException e) {
+			webSocketConnectFailedCounter.increment();
 			throw new ChatOperationException("Cannot connect to chat websocket", e);
 		}
+		webSocketConnectedCounter.increment();
 		LOGGER.debug("WebSocket session successfully opened in room {}.", roomId);
 	}
 
 	private void closeWebSocket() {
 		try {
 			webSocketSession.close();
+			webSocketClosedCounter.increment();
 			LOGGER.debug("WebSocket session successfully closed in room {}.", roomId);
 		} catch (IOException e) {
 			LOGGER.error("Error while closing the WebSocket in room {}.", roomId, e);
 		}
 	}
 
-	private void handleChatEvent(String json) {
-		LOGGER.debug("Received message: {}", json);
+	/**
+	 * Handles a message received over the WebSocket. The JSON is parsed straight from the reader, which reads the message as
+	 * it was inflated if it was compressed, without copying it to a string first.
+	 * @param reader Reader of the message.
+	 * @param compressed Whether permessage-deflate was negotiated, in which case the frames were already counted.
+	 */
+	private void handleChatEvent(Reader reader, boolean compressed) {
 		lastWebsocketMessageDate = LocalDateTime.now();
-		JsonObject jsonObject = new JsonParser().parse(json).getAsJsonObject();
-		jsonObject.entrySet().stream().filter(e -> e.getKey().equals("r" + roomId)).map(Map.Entry::getValue).map(JsonElement::getAsJsonObject).map(o -> o.get("e")).filter(Objects::nonNull).map(JsonElement::getAsJsonArray).findFirst().ifPresent(events -> {
-			for (Event event : Events.fromJsonData(events, this)) {
-				for (Consumer<Object> listener : chatEventListeners.getOrDefault(EventType.fromEvent(event), Collections.emptyList())) {
-					eventExecutor.submit(() -> listener.accept(event));
+		eventFramesCounter.increment();
+		Object jfrEvent = JfrEvents.beginWebSocketFrame();
+		CountingReader countingReader = new CountingReader(reader);
+		JsonObject jsonObject = new JsonParser().parse(countingReader).getAsJsonObject();
+		LOGGER.debug("Received message: {}", jsonObject);
+		webSocketInflatedBytesCounter.increment(countingReader.utf8Bytes());
+		if (!compressed) {
+			webSocketFramesCounter.increment();
+			webSocketBytesCounter.increment(countingReader.utf8Bytes());
+		}
+		int eventCount = jsonObject.entrySet().stream().filter(e -> e.getKey().equals("r" + roomId)).map(Map.Entry::getValue).map(JsonElement::getAsJsonObject).map(o -> o.get("e")).filter(Objects::nonNull).map(JsonElement::getAsJsonArray).findFirst().map(events -> {
+			long receivedMillis = System.currentTimeMillis();
+			long receivedNanos = System.nanoTime();
+			JsonArray freshEvents = withoutDuplicates(events);
+			trackRoomState(freshEvents);
+			List<Event> decodedEvents = Events.fromJsonData(admitted(withoutUnwanted(freshEvents), receivedNanos), this);
+			eventDecodeTimer.recordSince(receivedNanos);
+			eventsReceivedCounter.increment(decodedEvents.size());
+			for (Event event : decodedEvents) {
+				eventLagTimer.record(TimeUnit.MILLISECONDS.toNanos(receivedMillis - event.getInstant().toEpochMilli()));
+				eventLatencies.recordDecoded(event, receivedMillis);
+				EventType<Object> eventType = EventType.fromEvent(event);
+				for (Consumer<Object> listener : chatEventListeners.getOrDefault(eventType, Collections.emptyList())) {
+					pendingListeners.incrementAndGet();
+					eventExecutor().submit(() -> invokeListener(listener, event, receivedMillis));
+				}
+				for (Consumer<Object> listener : triggerListeners(event)) {
+					pendingListeners.incrementAndGet();
+					eventExecutor().submit(() -> invokeListener(listener, event, receivedMillis));
+				}
+				for (EventSubscription<?> subscription : eventSubscriptions) {
+					subscription.offer(eventType, event);
+				}
+				if (eventBusView != null) {
+					for (Consumer<Object> listener : eventBusView.listeners(eventType)) {
+						pendingListeners.incrementAndGet();
+						eventBusExecutor.execute(() -> invokeListener(listener, event, receivedMillis));
+					}
 				}
 			}
-		});
+			for (EventBatcher batcher : eventBatchers) {
+				batcher.add(decodedEvents);
+			}
+			// only now are the events of the frame processed, as far as checkpoints are concerned
+			for (JsonElement element : events) {
+				JsonElement id = element.getAsJsonObject().get("id");
+				if (id != null && id.getAsLong() > lastEventId) lastEventId = id.getAsLong();
+			}
+			return decodedEvents.size();
+		}).orElse(0);
+		JsonElement roomElement = jsonObject.get("r" + roomId);
+		if (roomElement != null && roomElement.isJsonObject() && roomElement.getAsJsonObject().has("t")) {
+			eventCursor = roomElement.getAsJsonObject().get("t").getAsLong();
+		}
+		JfrEvents.endWebSocketFrame(jfrEvent, host, roomId, countingReader.chars(), jsonObject.entrySet().size(), eventCount);
+	}
+
+	/**
+	 * Removes the events already received from the given raw events, before any work is done to decode them. Those are the
+	 * events already processed before the checkpoint this room resumed from, and, if enabled, the events already received by
+	 * any room of the client.
+	 * <p>The events of other rooms are kept as they are: they are dropped when decoding, and marking them as seen here would
+	 * make the room they belong to drop them as duplicates.
+	 */
+	private JsonArray withoutDuplicates(JsonArray events) {
+		EventDeduplicator deduplicator = eventDeduplicator;
+		long resumeAfter = resumeAfterEventId;
+		JsonArray result = null;
+		for (int i = 0; i < events.size(); i++) {
+			JsonObject event = events.get(i).getAsJsonObject();
+			JsonElement id = event.get("id");
+			boolean duplicate = false;
+			if (id != null && !isOfOtherRoom(event)) {
+				long eventId = id.getAsLong();
+				duplicate = eventId <= resumeAfter || deduplicator != null && !deduplicator.firstSeen(host, eventId);
+			}
+			if (duplicate && result == null) {
+				result = new JsonArray();
+				for (int j = 0; j < i; j++) {
+					result.add(events.get(j));
+				}
+			} else if (!duplicate && result != null) {
+				result.add(events.get(i));
+			}
+			if (duplicate) {
+				LOGGER.debug("Dropping duplicate event {} in room {}", id, roomId);
+				eventsDuplicateCounter.increment();
+			}
+		}
+		return result == null ? events : result;
+	}
+
+	/**
+	 * Removes the events nothing listens to from the given raw events, so that they are not decoded, which would retrieve
+	 * their message for nothing. Frames holding a kick are kept as they are, since a kick is decoded from two raw events.
+	 */
+	private JsonArray withoutUnwanted(JsonArray events) {
+		EventBus bus = eventBus;
+		if (bus != null) {
+			eventBusView = bus.view(eventBusView, host, roomId);
+		}
+		for (JsonElement element : events) {
+			if (Events.typeOf(element.getAsJsonObject()) == EventType.KICKED) return events;
+		}
+		JsonArray result = new JsonArray();
+		for (JsonElement element : events) {
+			EventType<?> eventType = Events.typeOf(element.getAsJsonObject());
+			if (eventType != null && isWanted(eventType)) {
+				result.add(element);
+			}
+		}
+		return result;
+	}
+
+	private boolean isWanted(EventType<?> eventType) {
+		if (!eventBatchers.isEmpty() || chatEventListeners.containsKey(eventType) || eventBusView != null && eventBusView.hasListeners(eventType)) return true;
+		if (eventType == EventType.MESSAGE_POSTED && !triggerRouter.isEmpty()) return true;
+		for (EventSubscription<?> subscription : eventSubscriptions) {
+			if (subscription.eventType() == eventType) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Removes the events shed by the flood control, if enabled, from the given raw events, before any work is done to decode
+	 * them.
+	 */
+	private JsonArray admitted(JsonArray events, long nowNanos) {
+		AdmissionControl admission = admissionControl;
+		if (admission == null) return events;
+		JsonArray result = new JsonArray();
+		for (JsonElement element : events) {
+			JsonObject event = element.getAsJsonObject();
+			// events of other rooms are filtered out when decoding, and must not be charged to this room
+			if (isOfOtherRoom(event) || admission.admit(event, nowNanos, this::reportLoadShedding)) {
+				result.add(event);
+			} else {
+				eventsShedCounter.increment();
+			}
+		}
+		return result;
+	}
+
+	private void reportLoadShedding(LoadShedding report) {
+		LOGGER.debug("Load shedding in room {}: {}", roomId, report);
+		for (Consumer<LoadShedding> listener : loadSheddingListeners) {
+			eventExecutor().submit(() -> {
+				try {
+					listener.accept(report);
+				} catch (RuntimeException e) {
+					listenerFailedCounter.increment();
+					LOGGER.error("A load shedding listener failed in room {}", roomId, e);
+				}
+			});
+		}
+	}
+
+	private ExecutorService eventExecutor() {
+		ExecutorService executor = eventExecutor;
+		if (executor == null) {
+			synchronized (this) {
+				executor = eventExecutor;
+				if (executor == null) {
+					eventExecutor = executor = threadMode == ThreadMode.VIRTUAL ? Threads.newVirtualThreadPerTaskExecutor("chat-listener-" + roomId) : Executors.newCachedThreadPool();
+				}
+			}
+		}
+		return executor;
+	}
+
+	private void invokeListener(Consumer<Object> listener, Event event, long receivedMillis) {
+		Object jfrEvent = JfrEvents.beginListener();
+		long start = System.nanoTime();
+		try {
+			listener.accept(event);
+		} catch (RuntimeException e) {
+			listenerFailedCounter.increment();
+			throw e;
+		} finally {
+			long end = System.nanoTime();
+			listenerTimer.record(end - start);
+			eventLatencies.recordListener(event, receivedMillis, start, end);
+			pendingListeners.decrementAndGet();
+			JfrEvents.endListener(jfrEvent, host, roomId, event, listener);
+		}
 	}
 
 	/**
@@ -242,13 +812,192 @@ public final class Room {
 	 * @param <T> type of the event.
 	 */
 	public <T> void addEventListener(EventType<T> event, Consumer<T> listener) {
+		checkListens();
 		@SuppressWarnings("unchecked") EventType<Object> eventCast = (EventType<Object>) event;
 		@SuppressWarnings("unchecked") Consumer<Object> listenerCast = (Consumer<Object>) listener;
 		chatEventListeners.computeIfAbsent(eventCast, e -> new ArrayList<>()).add(listenerCast);
 	}
 
+	/**
+	 * Adds a listener receiving the events of this room in batches, one per WebSocket frame. A frame often holds several
+	 * events, like bursts of messages, or a message along with the mention it makes: listeners writing the events somewhere can
+	 * then make one bulk write per batch.
+	 * <p>Batches hold the events of all types, in the order they were raised, and are never empty. They are delivered in order,
+	 * one at a time, on the thread pool of the listeners of this room.
+	 * @param listener Listener receiving the batches, which are unmodifiable.
+	 */
+	public void addBatchListener(Consumer<List<Event>> listener) {
+		addBatchListener(Duration.ZERO, listener);
+	}
+
+	/**
+	 * Adds a listener receiving the events of this room in batches, one per time window: a batch holds the events received
+	 * within the given duration after the first of them. See {@link #addBatchListener(Consumer)}.
+	 * @param window Duration of the time window, or zero to make a batch per WebSocket frame.
+	 * @param listener Listener receiving the batches, which are unmodifiable.
+	 */
+	public void addBatchListener(Duration window, Consumer<List<Event>> listener) {
+		checkListens();
+		if (window.isNegative()) {
+			throw new IllegalArgumentException("The time window cannot be negative, was " + window);
+		}
+		SerialExecutor batchExecutor = new SerialExecutor(eventExecutor());
+		eventBatchers.add(new EventBatcher(window.toNanos(), window.isZero() ? null : batchScheduler(), batch -> {
+			pendingListeners.incrementAndGet();
+			batchExecutor.execute(() -> invokeBatchListener(listener, batch));
+		}));
+	}
+
+	private synchronized ScheduledExecutorService batchScheduler() {
+		if (batchScheduler == null) {
+			batchScheduler = Executors.newSingleThreadScheduledExecutor();
+		}
+		return batchScheduler;
+	}
+
+	private void invokeBatchListener(Consumer<List<Event>> listener, List<Event> events) {
+		long start = System.nanoTime();
+		try {
+			listener.accept(events);
+		} catch (RuntimeException e) {
+			listenerFailedCounter.increment();
+			LOGGER.error("A batch listener failed on {} events in room {}", events.size(), roomId, e);
+		} finally {
+			listenerTimer.record(System.nanoTime() - start);
+			pendingListeners.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Adds a listener for the messages starting with the given command prefix, like <code>"!!/alive"</code>. Leading whitespace
+	 * in the message and case are ignored.
+	 * <p>Command, keyword and literal listeners are all matched together: each posted message is scanned once, whatever the
+	 * number of listeners, and only the listeners it matches are called, each at most once per message. They are called
+	 * concurrently, like the event listeners, so that a slow listener doesn't delay the others.
+	 * @param prefix Command prefix to look for.
+	 * @param listener Listener to call with the matching messages.
+	 */
+	public void addCommandListener(String prefix, Consumer<MessagePostedEvent> listener) {
+		addTrigger(TriggerRouter.Kind.COMMAND, prefix, listener);
+	}
+
+	/**
+	 * Adds a listener for the messages containing the given keyword as a whole word, that is not directly preceded or followed
+	 * by a letter or a digit. Case is ignored.
+	 * <p>See {@link #addCommandListener(String, Consumer)} for how messages are matched.
+	 * @param keyword Keyword to look for.
+	 * @param listener Listener to call with the matching messages.
+	 */
+	public void addKeywordListener(String keyword, Consumer<MessagePostedEvent> listener) {
+		addTrigger(TriggerRouter.Kind.KEYWORD, keyword, listener);
+	}
+
+	/**
+	 * Adds a listener for the messages containing the given literal text anywhere. Case is ignored.
+	 * <p>See {@link #addCommandListener(String, Consumer)} for how messages are matched.
+	 * @param literal Text to look for.
+	 * @param listener Listener to call with the matching messages.
+	 */
+	public void addLiteralListener(String literal, Consumer<MessagePostedEvent> listener) {
+		addTrigger(TriggerRouter.Kind.LITERAL, literal, listener);
+	}
+
+	private void addTrigger(TriggerRouter.Kind kind, String pattern, Consumer<MessagePostedEvent> listener) {
+		checkListens();
+		triggerRouter.add(kind, pattern, listener);
+	}
+
+	/**
+	 * Returns a stream of the events of the given type raised in this room, buffering up to 256 events not yet requested by
+	 * the subscriber, and dropping the oldest ones when it is full.
+	 * @param eventType Type of the events.
+	 * @param <T> Type of the events.
+	 * @return Publisher of the events.
+	 * @see #events(EventType, int, OverflowStrategy)
+	 */
+	public <T> Publisher<T> events(EventType<T> eventType) {
+		return events(eventType, EVENT_STREAM_BUFFER_SIZE, OverflowStrategy.DROP_OLDEST);
+	}
+
+	/**
+	 * Returns a stream of the events of the given type raised in this room, as a Reactive Streams publisher.
+	 * <p>Each subscriber receives the events raised after it subscribed, as it requests them: the events it didn't request
+	 * yet are buffered, up to the given size, after which the given strategy applies. Events are delivered on the thread
+	 * pool of the listeners of this room, one at a time per subscriber. The stream completes when this room is left.
+	 * @param eventType Type of the events.
+	 * @param bufferSize Maximum number of events buffered for a subscriber.
+	 * @param overflowStrategy What to do when the buffer of a subscriber is full.
+	 * @param <T> Type of the events.
+	 * @return Publisher of the events.
+	 */
+	public <T> Publisher<T> events(EventType<T> eventType, int bufferSize, OverflowStrategy overflowStrategy) {
+		checkListens();
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("The buffer size must be positive, was " + bufferSize);
+		}
+		return subscriber -> {
+			EventSubscription<T> subscription = new EventSubscription<>(eventType, Objects.requireNonNull(subscriber), bufferSize, overflowStrategy, eventExecutor(), this, eventSubscriptions::remove);
+			eventSubscriptions.add(subscription);
+			subscription.start();
+		};
+	}
+
+	/**
+	 * Adds a listener notified while this room sheds events because it is flooded. See {@link FloodControl} and
+	 * {@link LoadShedding} for when reports are sent.
+	 * @param listener Listener to add.
+	 */
+	public void addLoadSheddingListener(Consumer<LoadShedding> listener) {
+		checkListens();
+		loadSheddingListeners.add(listener);
+	}
+
+	private void checkListens() {
+		if (!mode.listens()) {
+			throw new ChatOperationException("Cannot listen to events in room " + roomId + ": it was joined in " + mode + " mode");
+		}
+	}
+
+	/**
+	 * Returns the command, keyword and literal listeners matching the given event. The content of the message is scanned
+	 * once, whatever the number of triggers.
+	 */
+	@SuppressWarnings("unchecked")
+	private List<Consumer<Object>> triggerListeners(Event event) {
+		if (!(event instanceof MessagePostedEvent) || triggerRouter.isEmpty()) return Collections.emptyList();
+		String content = ((MessagePostedEvent) event).getMessage().getPlainContent();
+		if (content == null) return Collections.emptyList();
+		List<Consumer<Object>> listeners = new ArrayList<>();
+		for (Consumer<? super MessagePostedEvent> listener : triggerRouter.route(content)) {
+			listeners.add((Consumer<Object>) listener);
+		}
+		return listeners;
+	}
+
 	private <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
-		return CompletableFuture.supplyAsync(supplier, executor).whenComplete((res, thr) -> {
+		return logged(CompletableFuture.supplyAsync(supplier, executor));
+	}
+
+	/**
+	 * Performs the given read on the I/O executor shared by the rooms of the client, so that reads run in parallel with each
+	 * other and with the operations of this room.
+	 */
+	private <T> CompletionStage<T> readAsync(Supplier<T> read, Duration timeout, String operation) {
+		CompletableFuture<T> future;
+		try {
+			future = CompletableFuture.supplyAsync(read, ioExecutor);
+		} catch (RejectedExecutionException e) {
+			future = new CompletableFuture<>();
+			future.completeExceptionally(new ChatOperationException(operation + " failed: the client was closed", e));
+		}
+		if (timeout != null) {
+			Timeouts.within(future, timeout, operation);
+		}
+		return logged(future);
+	}
+
+	private static <T> CompletableFuture<T> logged(CompletableFuture<T> future) {
+		return future.whenComplete((res, thr) -> {
 			if (res != null) LOGGER.trace("Task completed successfully with result: {}", res);
 			if (thr != null) LOGGER.error("Couldn't execute task", thr);
 		});
@@ -256,27 +1005,74 @@ public final class Room {
 
 	/**
 	 * Sends the given message asynchronously.
+	 * <p>If the message is too long to be posted in a single chat message, it is split into several parts, sent in order.
+	 * The returned future then holds the id of the last part, and completes exceptionally if any part couldn't be sent.
+	 * Use {@link #sendAll(String)} to get the ids of all the parts.
 	 * @param message Content of the message to send.
 	 * @return A future holding the id of the sent message.
 	 */
 	public CompletionStage<Long> send(String message) {
+		return sendAll(message).thenApply(result -> {
+			if (!result.isComplete()) {
+				throw new ChatOperationException("Only " + result.getMessageIds().size() + " of the " + result.getParts().size() + " parts of the message were sent to room " + roomId, result.getFailure().get());
+			}
+			List<Long> messageIds = result.getMessageIds();
+			return messageIds.get(messageIds.size() - 1);
+		});
+	}
+
+	/**
+	 * Sends the given message asynchronously, returning the ids of all the messages posted.
+	 * <p>If the message is too long to be posted in a single chat message, it is split into several parts. The parts are queued
+	 * at once and sent in order, paced by the throttles of the chat host, so that no other message of this room is posted
+	 * between them. Sending stops at the first part that fails: the returned {@link SendResult} holds the ids of the parts
+	 * that were sent and the cause of the failure. Operations on other rooms are never held by the sending of the parts.
+	 * @param message Content of the message to send.
+	 * @return A future holding the result of sending every part of the message.
+	 */
+	public CompletionStage<SendResult> sendAll(String message) {
 		LOGGER.info("Task added - sending message '{}' to room {}.", message, roomId);
-		List<String> parts = toParts(message, MAX_CHAT_MESSAGE_LENGTH);
-		// only return the id of the last message (this way, the 99.99% case of a single message works just as before)
-		for (int i = 0; i < parts.size() - 1; i++) {
+		List<String> parts = MessageSplitter.split(message, MAX_CHAT_MESSAGE_LENGTH);
+		CompletableFuture<SendResult> result = new CompletableFuture<>();
+		List<PendingPost> posts = new ArrayList<>();
+		for (String part : parts) {
+			posts.add(new PendingPost(hostUrlBase + "/chats/" + roomId + "/messages/new", new String[] { "text", part }));
+		}
+		// the parts complete in order, on the executor of the room
+		List<Long> messageIds = new ArrayList<>();
+		for (int i = 0; i < posts.size(); i++) {
+			int index = i;
 			String part = parts.get(i);
-			supplyAsync(() -> {
-				JsonElement element = post(hostUrlBase + "/chats/" + roomId + "/messages/new", "text", part);
-				LOGGER.debug("Message '{}' sent to room {}, raw result: {}", part, roomId, element);
-				return element.getAsJsonObject().get("id").getAsLong();
+			posts.get(i).future.whenComplete((element, thr) -> {
+				if (result.isDone()) {
+					// an earlier part failed
+					return;
+				}
+				Throwable failure = thr;
+				if (failure == null) {
+					LOGGER.debug("Message '{}' sent to room {}, raw result: {}", part, roomId, element);
+					try {
+						JsonObject object = element.getAsJsonObject();
+						long messageId = object.get("id").getAsLong();
+						JsonElement time = object.get("time");
+						sentMessages.record(messageId, time == null ? Instant.now() : Instant.ofEpochSecond(time.getAsLong()), part);
+						messageIds.add(messageId);
+					} catch (RuntimeException e) {
+						failure = e;
+					}
+				}
+				if (failure != null) {
+					LOGGER.error("Couldn't send part {} of {} of a message to room {}", index + 1, parts.size(), roomId, failure);
+					result.complete(new SendResult(parts, messageIds, failure));
+					// the parts still queued are skipped
+					posts.subList(index + 1, posts.size()).forEach(post -> post.future.cancel(false));
+				} else if (messageIds.size() == parts.size()) {
+					result.complete(new SendResult(parts, messageIds, null));
+				}
 			});
 		}
-		String part = parts.get(parts.size() - 1);
-		return supplyAsync(() -> {
-			JsonElement element = post(hostUrlBase + "/chats/" + roomId + "/messages/new", "text", part);
-			LOGGER.debug("Message '{}' sent to room {}, raw result: {}", part, roomId, element);
-			return element.getAsJsonObject().get("id").getAsLong();
-		});
+		enqueuePosts(posts);
+		return logged(result);
 	}
 
 	/**
@@ -285,17 +1081,71 @@ public final class Room {
 	 * @return URL of the uploaded image.
 	 */
 	public CompletionStage<String> uploadImage(Path path) {
-		InputStream is;
+		return uploadImage(path, null);
+	}
+
+	/**
+	 * Uploads the given file and returns the HTTP URL to the file hosted on imgur.
+	 * <p>The file is read from disk straight into the body of the request. Uploads run apart from the other operations of this
+	 * room, so that sending messages is not delayed by a slow upload. Cancelling the returned stage, with
+	 * <code>toCompletableFuture().cancel(true)</code>, completes it at once and stops reading the file; a request whose body was
+	 * already fully read is still sent, and its result ignored.
+	 * @param path Path of the file to upload.
+	 * @param progress Callback receiving the number of bytes read from the source so far, can be <code>null</code>.
+	 * @return URL of the uploaded image.
+	 */
+	public CompletionStage<String> uploadImage(Path path, LongConsumer progress) {
+		FileChannel channel;
 		try {
-			is = Files.newInputStream(path);
+			channel = FileChannel.open(path, StandardOpenOption.READ);
 		} catch (IOException e) {
 			throw new ChatOperationException("Can't open path " + path + " for reading.", e);
 		}
-		return uploadImage(path.getFileName().toString(), is).whenComplete((url, t) -> {
-			try {
-				is.close();
-			} catch (IOException e) { }
+		String fileName = path.getFileName().toString();
+		UploadStream stream = UploadStream.of(channel, progress);
+		ImageUploadCache cache = imageUploadCache;
+		if (cache == null) {
+			return cancellable(upload(fileName, stream), stream).whenComplete((url, t) -> closeQuietly(stream));
+		}
+		// the upload may be shared with other callers: the stream is closed by the upload if this call leads it, and
+		// cancelling the returned stage only stops waiting for it
+		AtomicInteger streamState = new AtomicInteger(STREAM_IDLE);
+		CompletableFuture<String> result = new CompletableFuture<>();
+		hash(channel).whenComplete((hash, thr) -> {
+			if (thr != null) {
+				result.completeExceptionally(thr);
+				return;
+			}
+			if (result.isDone()) return;
+			CompletableFuture<String> waiter = cache.upload(hash, () -> {
+				if (!streamState.compareAndSet(STREAM_IDLE, STREAM_UPLOADING)) {
+					CompletableFuture<String> cancelled = new CompletableFuture<>();
+					cancelled.cancel(false);
+					return cancelled;
+				}
+				return upload(fileName, stream).whenComplete((url, t) -> closeQuietly(stream));
+			}, stream::cancel);
+			result.whenComplete((url, t) -> {
+				if (result.isCancelled()) waiter.cancel(false);
+			});
+			waiter.whenComplete((url, t) -> {
+				if (t == null) {
+					result.complete(url);
+				} else {
+					result.completeExceptionally(t instanceof CompletionException ? t.getCause() : t);
+				}
+			});
+		});
+		result.whenComplete((url, t) -> {
+			if (streamState.compareAndSet(STREAM_IDLE, STREAM_CLOSED)) closeQuietly(stream);
 		});
+		return logged(result);
+	}
+
+	private static void closeQuietly(UploadStream stream) {
+		try {
+			stream.close();
+		} catch (IOException e) { }
 	}
 
 	/**
@@ -307,63 +1157,109 @@ public final class Room {
 	 * @return URL of the uploaded image.
 	 */
 	public CompletionStage<String> uploadImage(String fileName, InputStream inputStream) {
-		return supplyAsync(() -> {
-			Response response;
+		return uploadImage(fileName, inputStream, null);
+	}
+
+	/**
+	 * Uploads the given file and returns the HTTP URL to the file hosted on imgur.
+	 * <p>This method is asynchronous, thus, if the given input stream needs to be closed, make sure to properly close it in a
+	 * {@link CompletionStage#whenComplete(java.util.function.BiConsumer)} callback on the returned stage. Cancelling the
+	 * returned stage, with <code>toCompletableFuture().cancel(true)</code>, completes it at once and stops reading the stream;
+	 * a request whose body was already fully read is still sent, and its result ignored.
+	 * <p>The content of the stream cannot be known before it is uploaded: when an image upload cache is set, the content is
+	 * hashed while it is uploaded, so that later uploads of the same file hit the cache, but this upload always happens.
+	 * @param fileName Name of the file to upload.
+	 * @param inputStream Data.
+	 * @param progress Callback receiving the number of bytes read from the source so far, can be <code>null</code>.
+	 * @return URL of the uploaded image.
+	 */
+	public CompletionStage<String> uploadImage(String fileName, InputStream inputStream, LongConsumer progress) {
+		UploadStream stream = UploadStream.of(inputStream, progress);
+		ImageUploadCache cache = imageUploadCache;
+		CompletableFuture<String> future;
+		if (cache == null) {
+			future = upload(fileName, stream);
+		} else {
+			MessageDigest digest = ImageUploadCache.newDigest();
+			future = upload(fileName, stream.digesting(digest)).thenApply(url -> {
+				cache.put(ImageUploadCache.toHex(digest.digest()), url);
+				return url;
+			});
+		}
+		return cancellable(future, stream);
+	}
+
+	private CompletableFuture<String> upload(String fileName, UploadStream stream) {
+		LOGGER.info("Task added - uploading {} in room {}.", fileName, roomId);
+		CompletableFuture<String> future = new CompletableFuture<>();
+		if (!mode.sends()) {
+			future.completeExceptionally(new ChatOperationException("Cannot upload image in room " + roomId + ": it was joined in " + mode + " mode"));
+			return future;
+		}
+		Runnable upload = () -> {
+			if (future.isDone()) return;
 			try {
-				response = httpClient.postWithFile(hostUrlBase + "/upload/image", cookies, "filename", fileName, inputStream);
+				future.complete(parseUploadResponse(fileName, httpClient.postWithFile(hostUrlBase + "/upload/image", cookies, "filename", fileName, stream)));
 			} catch (IOException e) {
-				throw new ChatOperationException("Failed to upload image.", e);
-			}
-			String html = Jsoup.parse(response.body()).getElementsByTag("script").first().html();
-			Matcher failedUploadMatcher = FAILED_UPLOAD_PATTERN.matcher(html);
-			if (failedUploadMatcher.find()) {
-				throw new ChatOperationException(failedUploadMatcher.group(1));
+				future.completeExceptionally(new ChatOperationException("Failed to upload image.", e));
+			} catch (RuntimeException e) {
+				future.completeExceptionally(e);
 			}
-			Matcher successUploadMatcher = SUCCESS_UPLOAD_PATTERN.matcher(html);
-			if (successUploadMatcher.find()) {
-				return successUploadMatcher.group(1);
-			}
-			LOGGER.error("Tried to upload {} in room {} but couldn't parse result {}", fileName, roomId, html);
-			throw new ChatOperationException("Failed to upload image.");
-		});
+		};
+		try {
+			uploadExecutor.execute(upload);
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(new ChatOperationException("Cannot upload image: room " + roomId + " was left", e));
+		}
+		return future;
 	}
 
-	private static List<String> toParts(String message, int maxPartLength) {
-		if (message.length() <= maxPartLength || (message.trim().contains("\n") && !message.trim().endsWith("\n"))) {
-			return Arrays.asList(message);
-		}
-		List<String> messages = new ArrayList<>();
-		while (message.length() > maxPartLength) {
-			List<Integer[]> nonBreakingIndexes = identifyNonBreakingIndexes(message);
-			int breakIndex = message.lastIndexOf(' ', maxPartLength);
-			if (breakIndex < 0) breakIndex = maxPartLength; // 500 chars with no space =/, let's try to break at the max possible
-			for (Integer[] bounds : nonBreakingIndexes) {
-				if (bounds[0] < breakIndex && breakIndex < bounds[1]) {
-					breakIndex = bounds[0] - 1;
-					break;
+	/**
+	 * Hashes the content of the given file on the upload executor, without moving its position. The file is memory-mapped,
+	 * so that its content is hashed without being copied.
+	 */
+	private CompletableFuture<String> hash(FileChannel channel) {
+		CompletableFuture<String> future = new CompletableFuture<>();
+		try {
+			uploadExecutor.execute(() -> {
+				try {
+					MessageDigest digest = ImageUploadCache.newDigest();
+					digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+					future.complete(ImageUploadCache.toHex(digest.digest()));
+				} catch (IOException e) {
+					future.completeExceptionally(new ChatOperationException("Failed to read image.", e));
+				} catch (RuntimeException e) {
+					future.completeExceptionally(e);
 				}
-			}
-			if (breakIndex < 0) {
-				// we did our best, but this part starts with a non breaking index, and ends further than what is allowed...
-				throw new ChatOperationException("Cannot send message: it is longer than " + maxPartLength + " characters and cannot be broken into adequate parts");
-			}
-			messages.add(message.substring(0, breakIndex));
-			message = message.substring(breakIndex + 1);
-		}
-		if (!message.isEmpty()) {
-			messages.add(message);
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(new ChatOperationException("Cannot upload image: room " + roomId + " was left", e));
 		}
-		return messages;
+		return future;
 	}
 
-	private static List<Integer[]> identifyNonBreakingIndexes(String message) {
-		// identify non-breaking parts: links.
-		List<Integer[]> nonBreakingParts = new ArrayList<>();
-		Matcher matcher = MARKDOWN_LINK_PATTERN.matcher(message);
-		while (matcher.find()) {
-			nonBreakingParts.add(new Integer[] { matcher.start(), matcher.end() });
+	/**
+	 * Makes the cancellation of the given upload stop the reading of its stream.
+	 */
+	private static CompletableFuture<String> cancellable(CompletableFuture<String> future, UploadStream stream) {
+		future.whenComplete((url, t) -> {
+			if (future.isCancelled()) stream.cancel();
+		});
+		return logged(future);
+	}
+
+	private String parseUploadResponse(String fileName, Response response) {
+		String html = Jsoup.parse(response.body()).getElementsByTag("script").first().html();
+		Matcher failedUploadMatcher = FAILED_UPLOAD_PATTERN.matcher(html);
+		if (failedUploadMatcher.find()) {
+			throw new ChatOperationException(failedUploadMatcher.group(1));
+		}
+		Matcher successUploadMatcher = SUCCESS_UPLOAD_PATTERN.matcher(html);
+		if (successUploadMatcher.find()) {
+			return successUploadMatcher.group(1);
 		}
-		return nonBreakingParts;
+		LOGGER.error("Tried to upload {} in room {} but couldn't parse result {}", fileName, roomId, html);
+		throw new ChatOperationException("Failed to upload image.");
 	}
 
 	/**
@@ -384,35 +1280,210 @@ public final class Room {
 	 */
 	public CompletionStage<Long> edit(long messageId, String message) {
 		LOGGER.info("Task added - editing message {} in room {}.", messageId, roomId);
-		return supplyAsync(() -> {
-			String result = post(hostUrlBase + "/messages/" + messageId, "text", message).getAsString();
+		return logged(editAsync(messageId, message));
+	}
+
+	/**
+	 * Edits asynchronously all the given messages with their new content.
+	 * <p>The edits are pipelined, paced by the throttles of the chat host. Messages already known to be deleted are skipped.
+	 * @param messages Map of the id of each message to edit to its new content.
+	 * @return A future holding the result of the edit of each message.
+	 */
+	public CompletionStage<BulkResult> editAll(Map<Long, String> messages) {
+		LOGGER.info("Task added - editing {} messages in room {}.", messages.size(), roomId);
+		return bulk(messages.keySet(), messageId -> editAsync(messageId, messages.get(messageId)));
+	}
+
+	private CompletableFuture<Long> editAsync(long messageId, String message) {
+		return postAsync(hostUrlBase + "/messages/" + messageId, "text", message).thenApply(element -> {
+			String result = element.getAsString();
 			LOGGER.debug("Message {} edited to '{}' in room {}, raw result: {}", messageId, message, roomId, result);
 			if (!SUCCESS.equals(result)) {
 				throw new ChatOperationException("Cannot edit message " + messageId + ". Reason: " + result);
 			}
+			sentMessages.edited(messageId, message);
 			return messageId;
 		});
 	}
 
+	/**
+	 * Replaces asynchronously the content of the given message: the message is edited if it can still be, otherwise the new
+	 * content is sent as a new message. Nothing is done if the message already holds this content.
+	 * <p>The choice is made from what this room knows of the messages sent by the current user, without a request. For other
+	 * messages, the edit is tried, and the new content is sent if the chat server refuses it because the message is too old to
+	 * be edited; any other failure of the edit, like the message not belonging to the current user, fails the returned future.
+	 * @param messageId Id of the message to replace.
+	 * @param message New content of the message.
+	 * @return A future holding the id of the message holding the new content: the given id if the message was edited, or the
+	 * id of the new message (of its last part, if it was split) if it was sent again.
+	 */
+	public CompletionStage<Long> editOrResend(long messageId, String message) {
+		LOGGER.info("Task added - editing or resending message {} in room {}.", messageId, roomId);
+		SentMessageLedger.SentMessage sent = sentMessages.get(messageId);
+		if (sent != null && message.equals(sent.content())) {
+			return CompletableFuture.completedFuture(messageId);
+		}
+		Boolean editable = isEditableLocally(messageId);
+		if (editable != null) {
+			return editable ? logged(editAsync(messageId, message)) : send(message);
+		}
+		CompletableFuture<Long> result = new CompletableFuture<>();
+		editAsync(messageId, message).whenComplete((id, thr) -> {
+			Throwable cause = thr instanceof CompletionException ? thr.getCause() : thr;
+			if (cause == null) {
+				result.complete(id);
+			} else if (cause instanceof ChatOperationException && cause.getMessage() != null && cause.getMessage().contains(EDIT_WINDOW_PASSED)) {
+				// the chat server refused the edit because the edit window has passed
+				LOGGER.debug("Couldn't edit message {} in room {}, sending it again", messageId, roomId, cause);
+				send(message).whenComplete((newId, sendThr) -> {
+					if (sendThr != null) result.completeExceptionally(sendThr);
+					else result.complete(newId);
+				});
+			} else {
+				result.completeExceptionally(cause);
+			}
+		});
+		return logged(result);
+	}
+
+	/**
+	 * Records the messages of the current user posted in this room, including those sent by other processes. The current user
+	 * is recognized once a message sent by this room is seen.
+	 */
+	private void recordSentMessage(long messageId, long userId, Instant postedAt) {
+		if (sentMessages.contains(messageId)) {
+			currentUserId = userId;
+		} else if (userId == currentUserId) {
+			sentMessages.record(messageId, postedAt, null);
+		}
+	}
+
+	/**
+	 * Keeps track of the users of this room, of the deleted messages and of the messages of the current user, from the raw
+	 * events. This only needs the ids the raw events hold, so that the events no listener listens to are never decoded.
+	 * <p>Like decoding, this skips the events of other rooms, and only tracks actual users, not feeds (whose ids are not
+	 * positive).
+	 */
+	private void trackRoomState(JsonArray events) {
+		for (JsonElement element : events) {
+			JsonObject event = element.getAsJsonObject();
+			JsonElement type = event.get("event_type");
+			if (type == null || isOfOtherRoom(event)) continue;
+			long userId = rawLong(event, "user_id");
+			long messageId = rawLong(event, "message_id");
+			switch (type.getAsInt()) {
+			case 1: // message posted
+				if (userId > 0) pingableUserIds.add(userId);
+				recordSentMessage(messageId, userId, Instant.ofEpochSecond(rawLong(event, "time_stamp")));
+				break;
+			case 3: // user entered
+				if (userId > 0) {
+					currentUserIds.add(userId);
+					pingableUserIds.add(userId);
+				}
+				break;
+			case 4: // user left
+				if (userId > 0) currentUserIds.remove(userId);
+				break;
+			case 5: // room name changed
+				thumbsGeneration.incrementAndGet();
+				break;
+			case 10: // message deleted
+				deletedMessageIds.add(messageId);
+				sentMessages.deleted(messageId);
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Tells whether the given raw event belongs to another room. Such events can be sent in the frames of this room, and are
+	 * filtered out when decoding.
+	 */
+	private boolean isOfOtherRoom(JsonObject event) {
+		JsonElement eventRoomId = event.get("room_id");
+		return eventRoomId != null && eventRoomId.getAsInt() != roomId;
+	}
+
+	private static long rawLong(JsonObject event, String key) {
+		JsonElement value = event.get(key);
+		return value == null || value.isJsonNull() ? 0 : value.getAsLong();
+	}
+
 	/**
 	 * Returns whether this message can be edited as of now. This doesn't guarantee that a subsequent call to {@link #edit(long, String)}
 	 * will be successful, because the time window allowed for the edit could have been passed by then. However, if a call to
 	 * {@link #edit(long, String)} is made right after this method returns <code>true</code> then it is very likely to succeed
 	 * (i.e. not fail because the edit window has elapsed; it can still fail for other reasons).
-	 * <p>A message can be edited if it has been posted less than {@value #EDIT_WINDOW_SECONDS} seconds ago.
+	 * <p>A message can be edited if it has been posted less than {@value #EDIT_WINDOW_SECONDS} seconds ago. The messages
+	 * recently sent by the current user are answered for without a request; for the others, the history of the message is
+	 * retrieved.
 	 * @param messageId Id of the message.
 	 * @return <code>true</code> if the given message can be edited right now, <code>false</code> otherwise.
 	 */
 	public boolean isEditable(long messageId) {
+		Boolean editable = isEditableLocally(messageId);
+		if (editable != null) {
+			return editable;
+		}
 		try {
 			Document documentHistory = httpClient.get(hostUrlBase + "/messages/" + messageId + "/history", cookies, "fkey", fkey).parse();
-			LocalTime time = LocalTime.parse(documentHistory.getElementsByClass("timestamp").last().html(), MESSAGE_TIME_FORMATTER);
-			return ChronoUnit.SECONDS.between(time, LocalTime.now(ZoneOffset.UTC)) < EDIT_WINDOW_SECONDS;
+			LocalTime time;
+			try {
+				time = LocalTime.parse(documentHistory.getElementsByClass("timestamp").last().html(), MESSAGE_TIME_FORMATTER);
+			} catch (DateTimeParseException e) {
+				// messages posted before today are shown with their date, and are long past their edit window
+				return false;
+			}
+			long elapsed = ChronoUnit.SECONDS.between(time, LocalTime.now(ZoneOffset.UTC));
+			if (elapsed < 0) {
+				// posted before midnight
+				elapsed += TimeUnit.DAYS.toSeconds(1);
+			}
+			return elapsed < EDIT_WINDOW_SECONDS;
 		} catch (IOException e) {
 			throw new ChatOperationException(e);
 		}
 	}
 
+	/**
+	 * Tells whether the given message can be edited, from what this room knows of the messages sent by the current user.
+	 * @param messageId Id of the message.
+	 * @return Whether the message can be edited, or <code>null</code> if it isn't known.
+	 */
+	private Boolean isEditableLocally(long messageId) {
+		if (deletedMessageIds.contains(messageId)) {
+			return false;
+		}
+		SentMessageLedger.SentMessage message = sentMessages.get(messageId);
+		return message == null ? null : message.ageSeconds() < EDIT_WINDOW_SECONDS;
+	}
+
+	/**
+	 * Tells asynchronously whether this message can be edited as of now, like {@link #isEditable(long)}.
+	 * @param messageId Id of the message.
+	 * @return A future holding <code>true</code> if the given message can be edited, <code>false</code> otherwise.
+	 */
+	public CompletionStage<Boolean> isEditableAsync(long messageId) {
+		return isEditableAsync(messageId, null);
+	}
+
+	/**
+	 * Tells asynchronously whether this message can be edited as of now, like {@link #isEditable(long)}.
+	 * @param messageId Id of the message.
+	 * @param timeout Maximum time to wait for the answer, or <code>null</code> to wait as long as needed.
+	 * @return A future holding <code>true</code> if the given message can be edited, <code>false</code> otherwise.
+	 */
+	public CompletionStage<Boolean> isEditableAsync(long messageId, Duration timeout) {
+		Boolean editable = isEditableLocally(messageId);
+		if (editable != null) {
+			return CompletableFuture.completedFuture(editable);
+		}
+		return readAsync(() -> isEditable(messageId), timeout, "Checking if message " + messageId + " is editable");
+	}
+
 	/**
 	 * Deletes asynchronously the message having the given id.
 	 * @param messageId Id of the message to delete.
@@ -420,12 +1491,30 @@ public final class Room {
 	 */
 	public CompletionStage<Void> delete(long messageId) {
 		LOGGER.info("Task added - deleting message {} in room {}.", messageId, roomId);
-		return supplyAsync(() -> {
-			String result = post(hostUrlBase + "/messages/" + messageId + "/delete").getAsString();
+		return logged(deleteAsync(messageId));
+	}
+
+	/**
+	 * Deletes asynchronously all the messages having the given ids.
+	 * <p>The deletions are pipelined, paced by the throttles of the chat host. Messages already known to be deleted, either
+	 * because they were deleted by this room or because their deletion was seen in chat, are skipped.
+	 * @param messageIds Ids of the messages to delete.
+	 * @return A future holding the result of the deletion of each message.
+	 */
+	public CompletionStage<BulkResult> deleteAll(Collection<Long> messageIds) {
+		LOGGER.info("Task added - deleting {} messages in room {}.", messageIds.size(), roomId);
+		return bulk(messageIds, this::deleteAsync);
+	}
+
+	private CompletableFuture<Void> deleteAsync(long messageId) {
+		return postAsync(hostUrlBase + "/messages/" + messageId + "/delete").thenApply(element -> {
+			String result = element.getAsString();
 			LOGGER.debug("Message {} deleted in room {}, raw result: {}", messageId, roomId, result);
-			if (!SUCCESS.equals(result)) {
+			if (!SUCCESS.equals(result) && !result.contains(ALREADY_DELETED)) {
 				throw new ChatOperationException("Cannot delete message " + messageId + ". Reason: " + result);
 			}
+			deletedMessageIds.add(messageId);
+			sentMessages.deleted(messageId);
 			return null;
 		});
 	}
@@ -438,8 +1527,23 @@ public final class Room {
 	 */
 	public CompletionStage<Void> toggleStar(long messageId) {
 		LOGGER.info("Task added - starring/unstarring message {} in room {}.", messageId, roomId);
-		return supplyAsync(() -> {
-			String result = post(hostUrlBase + "/messages/" + messageId + "/star").getAsString();
+		return logged(toggleStarAsync(messageId));
+	}
+
+	/**
+	 * Stars or unstars all the given messages, like {@link #toggleStar(long)}.
+	 * <p>The operations are pipelined, paced by the throttles of the chat host. Messages already known to be deleted are skipped.
+	 * @param messageIds Ids of the messages to star / unstar.
+	 * @return A future holding the result of the operation for each message.
+	 */
+	public CompletionStage<BulkResult> toggleStarAll(Collection<Long> messageIds) {
+		LOGGER.info("Task added - starring/unstarring {} messages in room {}.", messageIds.size(), roomId);
+		return bulk(messageIds, this::toggleStarAsync);
+	}
+
+	private CompletableFuture<Void> toggleStarAsync(long messageId) {
+		return postAsync(hostUrlBase + "/messages/" + messageId + "/star").thenApply(element -> {
+			String result = element.getAsString();
 			LOGGER.debug("Message {} starred/unstarred in room {}, raw result: {}", messageId, roomId, result);
 			if (!SUCCESS.equals(result)) {
 				throw new ChatOperationException("Cannot star/unstar message " + messageId + ". Reason: " + result);
@@ -456,8 +1560,23 @@ public final class Room {
 	 */
 	public CompletionStage<Void> togglePin(long messageId) {
 		LOGGER.info("Task added - pining/unpining message {} in room {}.", messageId, roomId);
-		return supplyAsync(() -> {
-			String result = post(hostUrlBase + "/messages/" + messageId + "/owner-star").getAsString();
+		return logged(togglePinAsync(messageId));
+	}
+
+	/**
+	 * Pins or unpins all the given messages, like {@link #togglePin(long)}.
+	 * <p>The operations are pipelined, paced by the throttles of the chat host. Messages already known to be deleted are skipped.
+	 * @param messageIds Ids of the messages to pin / unpin.
+	 * @return A future holding the result of the operation for each message.
+	 */
+	public CompletionStage<BulkResult> togglePinAll(Collection<Long> messageIds) {
+		LOGGER.info("Task added - pining/unpining {} messages in room {}.", messageIds.size(), roomId);
+		return bulk(messageIds, this::togglePinAsync);
+	}
+
+	private CompletableFuture<Void> togglePinAsync(long messageId) {
+		return postAsync(hostUrlBase + "/messages/" + messageId + "/owner-star").thenApply(element -> {
+			String result = element.getAsString();
 			LOGGER.debug("Message {} pined/unpined in room {}, raw result: {}", messageId, roomId, result);
 			if (!SUCCESS.equals(result)) {
 				throw new ChatOperationException("Cannot pin/unpin message " + messageId + ". Reason: " + result);
@@ -466,6 +1585,39 @@ public final class Room {
 		});
 	}
 
+	/**
+	 * Submits the given operation for each of the given messages at once, except for those already known to be deleted.
+	 * The operations are then performed as fast as the throttles of the chat host allow.
+	 */
+	private CompletionStage<BulkResult> bulk(Collection<Long> messageIds, LongFunction<CompletableFuture<?>> operation) {
+		Map<Long, CompletableFuture<?>> operations = new LinkedHashMap<>();
+		List<Long> skipped = new ArrayList<>();
+		for (Long messageId : new LinkedHashSet<>(messageIds)) {
+			if (deletedMessageIds.contains(messageId)) {
+				skipped.add(messageId);
+			} else {
+				operations.put(messageId, operation.apply(messageId));
+			}
+		}
+		return CompletableFuture.allOf(operations.values().toArray(new CompletableFuture<?>[operations.size()])).handle((v, t) -> {
+			List<Long> succeeded = new ArrayList<>();
+			Map<Long, Throwable> failures = new LinkedHashMap<>();
+			operations.forEach((messageId, future) -> {
+				try {
+					future.join();
+					succeeded.add(messageId);
+				} catch (CompletionException e) {
+					failures.put(messageId, e.getCause());
+				} catch (CancellationException e) {
+					failures.put(messageId, e);
+				}
+			});
+			LOGGER.debug("Bulk operation in room {}: {} succeeded, {} skipped, {} failed", roomId, succeeded.size(), skipped.size(), failures.size());
+			return new BulkResult(succeeded, skipped, failures);
+		});
+	}
+
+
 	/**
 	 * Causes the current logged user to leave the room.
 	 * <p>Calling this method multiple times has no effect.
@@ -516,13 +1668,55 @@ public final class Room {
 		return new Message(messageId, user, plainContent, content, deleted, starCount, pinned, editCount);
 	}
 
+	/**
+	 * Retrieves asynchronously the {@link Message} having the given id.
+	 * @param messageId Id of the message to fetch.
+	 * @return A future holding the message with the given id.
+	 */
+	public CompletionStage<Message> getMessageAsync(long messageId) {
+		return getMessageAsync(messageId, null);
+	}
+
+	/**
+	 * Retrieves asynchronously the {@link Message} having the given id.
+	 * @param messageId Id of the message to fetch.
+	 * @param timeout Maximum time to wait for the message, or <code>null</code> to wait as long as needed.
+	 * @return A future holding the message with the given id.
+	 */
+	public CompletionStage<Message> getMessageAsync(long messageId, Duration timeout) {
+		return readAsync(() -> getMessage(messageId), timeout, "Retrieving message " + messageId);
+	}
+
 	/**
 	 * Returns the list of all the pingable users of this room.
-	 * <p>This consists of all the users that have been in the room at least once for the past 14 days.
+	 * <p>This consists of all the users that have been in the room at least once for the past 14 days. The list is fully
+	 * synchronized once a day, and kept up to date in between with the users entering the room or posting in it. The details
+	 * of the users come from a cache, holding them for {@value #USER_CACHE_SECONDS} seconds.
+	 * <p>In rooms joined in {@link RoomMode#SEND_ONLY} mode, the list is fetched at each call.
 	 * @return List of pingable users of this room.
 	 */
 	public List<User> getPingableUsers() {
-		return getUsers(pingableUserIds, currentUserIds::contains);
+		if (!mode.listens()) {
+			syncPingableUsers();
+		}
+		return getUsers(pingableUserIds.toArray(), currentUserIds::contains);
+	}
+
+	/**
+	 * Returns asynchronously the list of all the pingable users of this room, like {@link #getPingableUsers()}.
+	 * @return A future holding the list of pingable users of this room.
+	 */
+	public CompletionStage<List<User>> getPingableUsersAsync() {
+		return getPingableUsersAsync(null);
+	}
+
+	/**
+	 * Returns asynchronously the list of all the pingable users of this room, like {@link #getPingableUsers()}.
+	 * @param timeout Maximum time to wait for the users, or <code>null</code> to wait as long as needed.
+	 * @return A future holding the list of pingable users of this room.
+	 */
+	public CompletionStage<List<User>> getPingableUsersAsync(Duration timeout) {
+		return readAsync(this::getPingableUsers, timeout, "Retrieving the pingable users");
 	}
 
 	private void syncPingableUsers() {
@@ -533,16 +1727,43 @@ public final class Room {
 			throw new ChatOperationException(e);
 		}
 		JsonArray array = new JsonParser().parse(json).getAsJsonArray();
-		pingableUserIds = StreamSupport.stream(array.spliterator(), false).map(e -> e.getAsJsonArray().get(0).getAsLong()).collect(Collectors.toList());
+		ConcurrentLongSet userIds = new ConcurrentLongSet(array.size());
+		for (JsonElement element : array) {
+			userIds.add(element.getAsJsonArray().get(0).getAsLong());
+		}
+		pingableUserIds = userIds;
+		pingableSyncedAtMillis = System.currentTimeMillis();
 	}
 
 	/**
 	 * Returns the list of all the current users of this room.
-	 * <p>This consists of all the users that are present, at the moment of this call, in the room.
+	 * <p>This consists of all the users that are present, at the moment of this call, in the room. The details of the users
+	 * come from a cache, holding them for {@value #USER_CACHE_SECONDS} seconds.
+	 * <p>In rooms joined in {@link RoomMode#SEND_ONLY} mode, the list is fetched at each call.
 	 * @return List of current users of this room.
 	 */
 	public List<User> getCurrentUsers() {
-		return getUsers(currentUserIds, id -> true);
+		if (!mode.listens()) {
+			syncCurrentUsers();
+		}
+		return getUsers(currentUserIds.toArray(), id -> true);
+	}
+
+	/**
+	 * Returns asynchronously the list of all the current users of this room, like {@link #getCurrentUsers()}.
+	 * @return A future holding the list of current users of this room.
+	 */
+	public CompletionStage<List<User>> getCurrentUsersAsync() {
+		return getCurrentUsersAsync(null);
+	}
+
+	/**
+	 * Returns asynchronously the list of all the current users of this room, like {@link #getCurrentUsers()}.
+	 * @param timeout Maximum time to wait for the users, or <code>null</code> to wait as long as needed.
+	 * @return A future holding the list of current users of this room.
+	 */
+	public CompletionStage<List<User>> getCurrentUsersAsync(Duration timeout) {
+		return readAsync(this::getCurrentUsers, timeout, "Retrieving the current users");
 	}
 
 	private void syncCurrentUsers() {
@@ -554,24 +1775,109 @@ public final class Room {
 		}
 		String html = document.getElementsByTag("script").get(3).html();
 		Matcher matcher = CURRENT_USERS_PATTERN.matcher(html);
-		currentUserIds.clear();
+		ConcurrentLongSet userIds = new ConcurrentLongSet();
 		while (matcher.find()) {
-			currentUserIds.add(Long.valueOf(matcher.group(1)));
+			userIds.add(Long.parseLong(matcher.group(1)));
 		}
+		currentUserIds = userIds;
 	}
 
 	/**
-	 * Retrieves the {@link User} having the given id.
+	 * Retrieves the {@link User} having the given id. The user is always fetched from chat, so that its details are up to date.
 	 * @param userId Id of the user to fetch.
 	 * @return User with the given id.
 	 */
 	public User getUser(long userId) {
-		return getUsers(Arrays.asList(userId), currentUserIds::contains).get(0);
+		return fetchUsers(Arrays.asList(userId)).get(0).withCurrentlyInRoom(currentUserIds.contains(userId));
+	}
+
+	/**
+	 * Retrieves asynchronously the {@link User} having the given id, like {@link #getUser(long)}.
+	 * @param userId Id of the user to fetch.
+	 * @return A future holding the user with the given id.
+	 */
+	public CompletionStage<User> getUserAsync(long userId) {
+		return getUserAsync(userId, null);
+	}
+
+	/**
+	 * Retrieves asynchronously the {@link User} having the given id, like {@link #getUser(long)}.
+	 * @param userId Id of the user to fetch.
+	 * @param timeout Maximum time to wait for the user, or <code>null</code> to wait as long as needed.
+	 * @return A future holding the user with the given id.
+	 */
+	public CompletionStage<User> getUserAsync(long userId, Duration timeout) {
+		return readAsync(() -> getUser(userId), timeout, "Retrieving user " + userId);
+	}
+
+	/**
+	 * Returns the users having the given ids, in order. Users fetched less than {@value #USER_CACHE_SECONDS} seconds ago are
+	 * taken from the cache; the others are fetched.
+	 */
+	private List<User> getUsers(long[] userIds, LongPredicate inRoom) {
+		long now = System.nanoTime();
+		Map<Long, User> users = new HashMap<>();
+		List<Long> missingIds = new ArrayList<>();
+		for (long id : userIds) {
+			CachedUser cached = userCache.get(id);
+			if (cached != null && now - cached.fetchedNanos < TimeUnit.SECONDS.toNanos(USER_CACHE_SECONDS)) {
+				users.put(id, cached.user);
+			} else {
+				missingIds.add(id);
+			}
+		}
+		if (!missingIds.isEmpty()) {
+			for (User user : fetchUsersInChunks(missingIds)) {
+				users.put(user.getId(), user);
+			}
+		}
+		List<User> result = new ArrayList<>(userIds.length);
+		for (long id : userIds) {
+			User user = users.get(id);
+			if (user != null) {
+				result.add(user.withCurrentlyInRoom(inRoom.test(id)));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Fetches the users having the given ids in chunks of {@value #USER_INFO_CHUNK_SIZE}, fetched in parallel. The first
+	 * chunk is fetched by the calling thread.
+	 */
+	private List<User> fetchUsersInChunks(List<Long> userIds) {
+		if (userIds.size() <= USER_INFO_CHUNK_SIZE) {
+			return fetchUsers(userIds);
+		}
+		// the chunks not started yet by the executor are fetched by the calling thread, which may itself be an I/O thread
+		List<UserChunk> chunks = new ArrayList<>();
+		for (int i = USER_INFO_CHUNK_SIZE; i < userIds.size(); i += USER_INFO_CHUNK_SIZE) {
+			UserChunk chunk = new UserChunk(userIds.subList(i, Math.min(i + USER_INFO_CHUNK_SIZE, userIds.size())));
+			chunks.add(chunk);
+			try {
+				ioExecutor.execute(chunk::fetch);
+			} catch (RejectedExecutionException e) { }
+		}
+		List<User> users = new ArrayList<>(fetchUsers(userIds.subList(0, USER_INFO_CHUNK_SIZE)));
+		try {
+			for (UserChunk chunk : chunks) {
+				chunk.fetch();
+				users.addAll(chunk.users.join());
+			}
+		} catch (CompletionException e) {
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+		}
+		return users;
 	}
 
-	private List<User> getUsers(Iterable<Long> userIds, LongPredicate inRoom) {
-		String ids = StreamSupport.stream(userIds.spliterator(), false).map(Object::toString).collect(Collectors.joining(","));
-		return StreamSupport.stream(post(hostUrlBase + "/user/info", "ids", ids, "roomId", String.valueOf(roomId)).getAsJsonObject().get("users").getAsJsonArray().spliterator(), false).map(JsonElement::getAsJsonObject).map(object -> {
+	/**
+	 * Fetches the users having the given ids with a single request, and caches them. The returned users are considered as
+	 * not in the room.
+	 */
+	private List<User> fetchUsers(List<Long> userIds) {
+		String ids = userIds.stream().map(Object::toString).collect(Collectors.joining(","));
+		long fetchedNanos = System.nanoTime();
+		List<User> users = StreamSupport.stream(post(hostUrlBase + "/user/info", "ids", ids, "roomId", String.valueOf(roomId)).getAsJsonObject().get("users").getAsJsonArray().spliterator(), false).map(JsonElement::getAsJsonObject).map(object -> {
 			long id = object.get("id").getAsLong();
 			String userName = object.get("name").getAsString();
 			int reputation = object.get("reputation").getAsInt();
@@ -580,8 +1886,48 @@ public final class Room {
 			Instant lastSeen = object.get("last_seen").isJsonNull() ? null : Instant.ofEpochSecond(object.get("last_seen").getAsLong());
 			Instant lastMessage = object.get("last_post").isJsonNull() ? null : Instant.ofEpochSecond(object.get("last_post").getAsLong());
 			String profileLink = hostUrlBase + "/users/" + id;
-			return new User(id, userName, reputation, moderator, owner, lastSeen, lastMessage, inRoom.test(id), profileLink);
+			return new User(id, userName, reputation, moderator, owner, lastSeen, lastMessage, false, profileLink);
 		}).collect(Collectors.toList());
+		if (userCache.size() + users.size() > MAX_CACHED_USERS) {
+			userCache.values().removeIf(cached -> fetchedNanos - cached.fetchedNanos >= TimeUnit.SECONDS.toNanos(USER_CACHE_SECONDS));
+		}
+		for (User user : users) {
+			userCache.put(user.getId(), new CachedUser(user, fetchedNanos));
+		}
+		return users;
+	}
+
+	private final class UserChunk {
+
+		private final List<Long> userIds;
+		private final AtomicBoolean started = new AtomicBoolean();
+		private final CompletableFuture<List<User>> users = new CompletableFuture<>();
+
+		private UserChunk(List<Long> userIds) {
+			this.userIds = userIds;
+		}
+
+		private void fetch() {
+			if (!started.compareAndSet(false, true)) return;
+			try {
+				users.complete(fetchUsers(userIds));
+			} catch (RuntimeException e) {
+				users.completeExceptionally(e);
+			}
+		}
+
+	}
+
+	private static final class CachedUser {
+
+		private final User user;
+		private final long fetchedNanos;
+
+		private CachedUser(User user, long fetchedNanos) {
+			this.user = user;
+			this.fetchedNanos = fetchedNanos;
+		}
+
 	}
 
 	/**
@@ -597,18 +1943,90 @@ public final class Room {
 	/**
 	 * Returns the thumbs for this chat room. This includes various informations such as: name, description...
 	 * <p>Refer to {@link RoomThumbs} for a description of all the fields.
+	 * <p>The thumbs are cached: they are only fetched again when the room name or description changes, or after
+	 * {@value #THUMBS_MAX_AGE_SECONDS} seconds, with a conditional request so that unchanged thumbs are not downloaded again.
 	 * @return Thumbs for this chat room
 	 */
 	public RoomThumbs getThumbs() {
-		String json;
-		try {
-			json = httpClient.get(hostUrlBase + "/rooms/thumbs/" + roomId, cookies).body();
-		} catch (IOException e) {
-			throw new ChatOperationException(e);
+		CachedThumbs cached = thumbs;
+		if (isFresh(cached)) {
+			return cached.thumbs;
+		}
+		synchronized (thumbsLock) {
+			cached = thumbs;
+			if (isFresh(cached)) {
+				return cached.thumbs;
+			}
+			long generation = thumbsGeneration.get();
+			Map<String, String> headers = new HashMap<>();
+			if (cached != null && cached.generation == generation) {
+				if (cached.eTag != null) headers.put("If-None-Match", cached.eTag);
+				if (cached.lastModified != null) headers.put("If-Modified-Since", cached.lastModified);
+			}
+			Response response;
+			try {
+				response = httpClient.get(hostUrlBase + "/rooms/thumbs/" + roomId, cookies, headers);
+			} catch (IOException e) {
+				throw new ChatOperationException(e);
+			}
+			if (response.statusCode() == 304 && !headers.isEmpty()) {
+				LOGGER.debug("Thumbs of room {} not modified", roomId);
+				thumbs = new CachedThumbs(cached.thumbs, cached.eTag, cached.lastModified, generation);
+				return cached.thumbs;
+			}
+			JsonObject obj = new JsonParser().parse(response.body()).getAsJsonObject();
+			List<String> tags = Jsoup.parse(obj.get("tags").getAsString()).getElementsByTag("a").stream().map(Element::html).collect(Collectors.toList());
+			RoomThumbs roomThumbs = new RoomThumbs(obj.get("id").getAsInt(), obj.get("name").getAsString(), obj.get("description").getAsString(), obj.get("isFavorite").getAsBoolean(), tags);
+			thumbs = new CachedThumbs(roomThumbs, response.header("ETag"), response.header("Last-Modified"), generation);
+			return roomThumbs;
+		}
+	}
+
+	private boolean isFresh(CachedThumbs cached) {
+		return cached != null && cached.generation == thumbsGeneration.get()
+				&& System.nanoTime() - cached.fetchedNanos < TimeUnit.SECONDS.toNanos(THUMBS_MAX_AGE_SECONDS);
+	}
+
+	private static final class CachedThumbs {
+
+		private final RoomThumbs thumbs;
+		private final String eTag, lastModified;
+		private final long generation;
+		private final long fetchedNanos = System.nanoTime();
+
+		private CachedThumbs(RoomThumbs thumbs, String eTag, String lastModified, long generation) {
+			this.thumbs = thumbs;
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+			this.generation = generation;
 		}
-		JsonObject obj = new JsonParser().parse(json).getAsJsonObject();
-		List<String> tags = Jsoup.parse(obj.get("tags").getAsString()).getElementsByTag("a").stream().map(Element::html).collect(Collectors.toList());
-		return new RoomThumbs(obj.get("id").getAsInt(), obj.get("name").getAsString(), obj.get("description").getAsString(), obj.get("isFavorite").getAsBoolean(), tags);
+
+	}
+
+	/**
+	 * Returns asynchronously the thumbs for this chat room, like {@link #getThumbs()}.
+	 * @return A future holding the thumbs for this chat room.
+	 */
+	public CompletionStage<RoomThumbs> getThumbsAsync() {
+		return getThumbsAsync(null);
+	}
+
+	/**
+	 * Returns asynchronously the thumbs for this chat room, like {@link #getThumbs()}.
+	 * @param timeout Maximum time to wait for the thumbs, or <code>null</code> to wait as long as needed.
+	 * @return A future holding the thumbs for this chat room.
+	 */
+	public CompletionStage<RoomThumbs> getThumbsAsync(Duration timeout) {
+		return readAsync(this::getThumbs, timeout, "Retrieving the thumbs of room " + roomId);
+	}
+
+	/**
+	 * Returns the latency distributions of the events received in this room, from the time they were raised by the server
+	 * to the time their listeners completed.
+	 * @return Latencies of the events of this room.
+	 */
+	public EventLatencies getEventLatencies() {
+		return eventLatencies;
 	}
 
 	/**
@@ -618,19 +2036,102 @@ public final class Room {
 	public ChatHost getHost() {
 		return host;
 	}
+
+	/**
+	 * Returns the mode this room was joined in.
+	 * @return Mode of this room.
+	 */
+	public RoomMode getMode() {
+		return mode;
+	}
 	
+	/**
+	 * Sets the cache of the images uploaded in this room.
+	 * @param imageUploadCache Cache to use, or <code>null</code> to upload every image.
+	 */
+	void setImageUploadCache(ImageUploadCache imageUploadCache) {
+		this.imageUploadCache = imageUploadCache;
+	}
+
+	/**
+	 * Sets the registry of the listeners of the client, and the executor running them. The listeners are called in the order
+	 * of the events of this room.
+	 * @param eventBus Listeners of the client.
+	 * @param executor Executor shared by the rooms of the client.
+	 */
+	void setEventBus(EventBus eventBus, Executor executor) {
+		this.eventBusExecutor = new SerialExecutor(executor);
+		this.eventBus = eventBus;
+	}
+
+	/**
+	 * Sets the flood control limiting the events dispatched in this room. The room gets its own buckets, starting full.
+	 * @param floodControl Flood control to enforce, or <code>null</code> to dispatch every event.
+	 */
+	void setFloodControl(FloodControl floodControl) {
+		this.admissionControl = floodControl == null ? null : new AdmissionControl(floodControl, roomId);
+	}
+
+	/**
+	 * Sets whether the WebSocket of this room offers the permessage-deflate extension. It takes effect when the WebSocket
+	 * next connects.
+	 * @param webSocketCompression <code>true</code> to offer compression.
+	 */
+	void setWebSocketCompression(boolean webSocketCompression) {
+		this.webSocketCompression = webSocketCompression;
+	}
+
+	/**
+	 * Sets the deduplicator dropping the events already received by the rooms of the client.
+	 * @param eventDeduplicator Deduplicator to use, or <code>null</code> to dispatch every event received.
+	 */
+	void setEventDeduplicator(EventDeduplicator eventDeduplicator) {
+		this.eventDeduplicator = eventDeduplicator;
+	}
+
 	/**
 	 * Returns the cookies used to post in this room
-	 * @return cookies as Map
+	 * @return cookies as an unmodifiable Map, holding the cookies of the domain of the chat host at the time of the call
 	 */
 	public Map<String, String> getCookies() {
-		return this.cookies;
+		return cookies.get(hostUrlBase);
+	}
+
+	/**
+	 * Adds a subscription to the events of this room, created by the client.
+	 * @param subscription Subscription to offer the events to.
+	 */
+	void addEventSubscription(EventSubscription<?> subscription) {
+		eventSubscriptions.add(subscription);
+	}
+
+	/**
+	 * Removes a subscription added with {@link #addEventSubscription(EventSubscription)}.
+	 * @param subscription Subscription to remove.
+	 */
+	void removeEventSubscription(EventSubscription<?> subscription) {
+		eventSubscriptions.remove(subscription);
 	}
 
 	void close() {
+		eventSubscriptions.forEach(subscription -> subscription.completeIfOwnedBy(this));
+		eventBatchers.forEach(EventBatcher::flush);
+		if (checkpointFile != null && mode.listens()) {
+			writeCheckpoint();
+		}
 		executor.shutdown();
-		eventExecutor.shutdown();
-		closeWebSocket();
+		synchronized (this) {
+			if (batchScheduler != null) {
+				batchScheduler.shutdown();
+			}
+		}
+		if (eventExecutor != null) {
+			eventExecutor.shutdown();
+		}
+		uploadExecutor.shutdown();
+		if (webSocketSession != null) {
+			closeWebSocket();
+		}
 	}
 
 }
@@ -0,0 +1,140 @@
+package org.sobotics.chatexchange.chat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * State of a room saved to disk, so that the room can resume where it left off after a restart instead of starting cold.
+ * <p>A checkpoint holds the position in the event stream of the room, the users present, the pingable users and the ids of
+ * the messages known to be deleted. It is written in a compact binary format, replacing the previous checkpoint atomically.
+ */
+final class RoomCheckpoint {
+
+	private static final int MAGIC = 0x43484b50; // "CHKP"
+	private static final int VERSION = 1;
+
+	final ChatHost host;
+	final int roomId;
+	/**
+	 * Time at which the checkpoint was taken, in milliseconds since the epoch
+	 */
+	final long savedAtMillis;
+	/**
+	 * Position in the event stream of the room, as sent by the server, or 0 if no event was received
+	 */
+	final long eventCursor;
+	/**
+	 * Id of the last event received, or 0 if no event was received
+	 */
+	final long lastEventId;
+	/**
+	 * Time of the last full synchronization of the pingable users, in milliseconds since the epoch
+	 */
+	final long pingableSyncedAtMillis;
+	final long[] currentUserIds;
+	final long[] pingableUserIds;
+	final long[] deletedMessageIds;
+
+	RoomCheckpoint(ChatHost host, int roomId, long savedAtMillis, long eventCursor, long lastEventId, long pingableSyncedAtMillis,
+			long[] currentUserIds, long[] pingableUserIds, long[] deletedMessageIds) {
+		this.host = host;
+		this.roomId = roomId;
+		this.savedAtMillis = savedAtMillis;
+		this.eventCursor = eventCursor;
+		this.lastEventId = lastEventId;
+		this.pingableSyncedAtMillis = pingableSyncedAtMillis;
+		this.currentUserIds = currentUserIds;
+		this.pingableUserIds = pingableUserIds;
+		this.deletedMessageIds = deletedMessageIds;
+	}
+
+	/**
+	 * Returns the file holding the checkpoint of the given room, in the given directory.
+	 * @param directory Directory of the checkpoints.
+	 * @param host Host of the room.
+	 * @param roomId Id of the room.
+	 * @return File of the checkpoint.
+	 */
+	static Path file(Path directory, ChatHost host, int roomId) {
+		return directory.resolve(host.getName() + "-" + roomId + ".checkpoint");
+	}
+
+	/**
+	 * Reads the checkpoint stored in the given file.
+	 * @param file File to read.
+	 * @return Checkpoint read, or <code>null</code> if there is no checkpoint in that file.
+	 * @throws IOException If the file cannot be read or isn't a valid checkpoint.
+	 */
+	static RoomCheckpoint read(Path file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not a room checkpoint: " + file);
+			}
+			ChatHost host = ChatHost.valueOf(in.readUTF());
+			int roomId = in.readInt();
+			long savedAtMillis = in.readLong();
+			long eventCursor = in.readLong();
+			long lastEventId = in.readLong();
+			long pingableSyncedAtMillis = in.readLong();
+			return new RoomCheckpoint(host, roomId, savedAtMillis, eventCursor, lastEventId, pingableSyncedAtMillis, readLongs(in), readLongs(in), readLongs(in));
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Invalid room checkpoint: " + file, e);
+		}
+	}
+
+	/**
+	 * Writes this checkpoint to the given file, replacing it atomically.
+	 * @param file File to write.
+	 * @throws IOException If the file cannot be written.
+	 */
+	void write(Path file) throws IOException {
+		Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(host.name());
+				out.writeInt(roomId);
+				out.writeLong(savedAtMillis);
+				out.writeLong(eventCursor);
+				out.writeLong(lastEventId);
+				out.writeLong(pingableSyncedAtMillis);
+				writeLongs(out, currentUserIds);
+				writeLongs(out, pingableUserIds);
+				writeLongs(out, deletedMessageIds);
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static long[] readLongs(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			throw new IOException("Invalid room checkpoint: negative length " + length);
+		}
+		long[] values = new long[length];
+		for (int i = 0; i < length; i++) {
+			values[i] = in.readLong();
+		}
+		return values;
+	}
+
+	private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+		out.writeInt(values.length);
+		for (long value : values) {
+			out.writeLong(value);
+		}
+	}
+
+}
@@ -0,0 +1,51 @@
+package org.sobotics.chatexchange.chat;
+
+import java.util.Arrays;
+
+/**
+ * Selects the rooms a client-wide event listener applies to. See
+ * {@link StackExchangeClient#addEventListener(org.sobotics.chatexchange.chat.event.EventType, RoomFilter, java.util.function.Consumer)}.
+ * <p>Filters are evaluated once per room, before any event is decoded, so that the events of the rooms no listener applies to
+ * cost nothing. They must therefore always return the same result for the same room.
+ */
+@FunctionalInterface
+public interface RoomFilter {
+
+	/**
+	 * Tells whether the given room is selected.
+	 * @param host Host of the room.
+	 * @param roomId Id of the room.
+	 * @return <code>true</code> if the room is selected.
+	 */
+	boolean accepts(ChatHost host, int roomId);
+
+	/**
+	 * Returns a filter selecting all the rooms.
+	 * @return Filter selecting all the rooms.
+	 */
+	static RoomFilter all() {
+		return (host, roomId) -> true;
+	}
+
+	/**
+	 * Returns a filter selecting the rooms of the given host.
+	 * @param host Host of the rooms to select.
+	 * @return Filter selecting the rooms of the host.
+	 */
+	static RoomFilter host(ChatHost host) {
+		return (roomHost, roomId) -> roomHost == host;
+	}
+
+	/**
+	 * Returns a filter selecting the given rooms of the given host.
+	 * @param host Host of the rooms to select.
+	 * @param roomIds Ids of the rooms to select.
+	 * @return Filter selecting the rooms.
+	 */
+	static RoomFilter rooms(ChatHost host, int... roomIds) {
+		int[] sortedRoomIds = roomIds.clone();
+		Arrays.sort(sortedRoomIds);
+		return (roomHost, roomId) -> roomHost == host && Arrays.binarySearch(sortedRoomIds, roomId) >= 0;
+	}
+
+}
@@ -0,0 +1,41 @@
+package org.sobotics.chatexchange.chat;
+
+/**
+ * The ways a room can be joined, setting up only what is needed. A room is joined in a given mode with
+ * {@link StackExchangeClient#joinRoom(ChatHost, int, RoomMode)}.
+ */
+public enum RoomMode {
+
+	/**
+	 * The room can send messages and listen to events. This is the default mode.
+	 */
+	FULL(true, true),
+
+	/**
+	 * The room can send messages, but doesn't listen to events: no WebSocket is opened, and the users of the room are only
+	 * fetched when asked for. Joining a room in this mode only fetches the fkey of the room.
+	 * <p>Adding an event listener to a room joined in this mode fails.
+	 */
+	SEND_ONLY(true, false),
+
+	/**
+	 * The room listens to events, but cannot send messages, nor edit, delete, star, pin or upload anything.
+	 */
+	LISTEN_ONLY(false, true);
+
+	private final boolean sends, listens;
+
+	private RoomMode(boolean sends, boolean listens) {
+		this.sends = sends;
+		this.listens = listens;
+	}
+
+	boolean sends() {
+		return sends;
+	}
+
+	boolean listens() {
+		return listens;
+	}
+
+}
@@ -0,0 +1,65 @@
+package org.sobotics.chatexchange.chat;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Result of sending a message with {@link Room#sendAll(String)}. A message longer than what chat allows is sent as several
+ * parts, in order; this holds the id of every part that was sent.
+ * <p>Parts are sent one after the other, and sending stops at the first part that fails: in that case, the ids of the parts
+ * sent before it are still available, along with the cause of the failure.
+ */
+public final class SendResult {
+
+	private final List<String> parts;
+	private final List<Long> messageIds;
+	private final Throwable failure;
+
+	SendResult(List<String> parts, List<Long> messageIds, Throwable failure) {
+		this.parts = Collections.unmodifiableList(parts);
+		this.messageIds = Collections.unmodifiableList(messageIds);
+		this.failure = failure;
+	}
+
+	/**
+	 * Returns the parts the message was split into, in the order they were sent.
+	 * @return Parts of the message.
+	 */
+	public List<String> getParts() {
+		return parts;
+	}
+
+	/**
+	 * Returns the ids of the messages that were posted, one for each part successfully sent, in order.
+	 * @return Ids of the posted messages.
+	 */
+	public List<Long> getMessageIds() {
+		return messageIds;
+	}
+
+	/**
+	 * Tells whether all the parts of the message were sent.
+	 * @return <code>true</code> if every part was sent, <code>false</code> if sending failed.
+	 */
+	public boolean isComplete() {
+		return failure == null;
+	}
+
+	/**
+	 * Returns the index, in {@link #getParts()}, of the part that failed to be sent. The parts after it were not sent.
+	 * @return Index of the part that failed, or -1 if all the parts were sent.
+	 */
+	public int getFailedPartIndex() {
+		return failure == null ? -1 : messageIds.size();
+	}
+
+	/**
+	 * Returns the reason why sending a part failed.
+	 * @return Cause of the failure, or an empty <code>Optional</code> if all the parts were sent.
+	 */
+	public Optional<Throwable> getFailure() {
+		return Optional.ofNullable(failure);
+	}
+
+}
@@ -0,0 +1,110 @@
+package org.sobotics.chatexchange.chat;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded record of the messages posted by the current user in a room: their id, the time the server posted them at, and
+ * their last known content. It tells how long ago a message was posted without asking the chat server.
+ * <p>The oldest messages are forgotten first. Ages are measured with {@link System#nanoTime()}, so that changes of the wall
+ * clock, or midnight, don't affect them.
+ */
+final class SentMessageLedger {
+
+	private final int capacity;
+	// guarded by this
+	private final Map<Long, SentMessage> messages;
+
+	SentMessageLedger(int capacity) {
+		this.capacity = capacity;
+		messages = new LinkedHashMap<Long, SentMessage>() {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, SentMessage> eldest) {
+				return size() > SentMessageLedger.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Records a message, unless it is already recorded.
+	 * @param messageId Id of the message.
+	 * @param postedAt Time at which the server posted the message.
+	 * @param content Content of the message, or <code>null</code> if it isn't known.
+	 */
+	synchronized void record(long messageId, Instant postedAt, String content) {
+		long ageMillis = Math.max(0, System.currentTimeMillis() - postedAt.toEpochMilli());
+		long postedNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(ageMillis);
+		messages.putIfAbsent(messageId, new SentMessage(postedAt, postedNanos, content));
+	}
+
+	/**
+	 * Sets the content of a recorded message, after it was edited.
+	 * @param messageId Id of the message.
+	 * @param content New content of the message, or <code>null</code> if it isn't known.
+	 */
+	synchronized void edited(long messageId, String content) {
+		messages.computeIfPresent(messageId, (id, message) -> new SentMessage(message.postedAt, message.postedNanos, content));
+	}
+
+	/**
+	 * Forgets a message, after it was deleted.
+	 * @param messageId Id of the message.
+	 */
+	synchronized void deleted(long messageId) {
+		messages.remove(messageId);
+	}
+
+	/**
+	 * Tells whether a message is recorded.
+	 * @param messageId Id of the message.
+	 * @return <code>true</code> if the message is recorded.
+	 */
+	synchronized boolean contains(long messageId) {
+		return messages.containsKey(messageId);
+	}
+
+	/**
+	 * Returns the recorded message having the given id.
+	 * @param messageId Id of the message.
+	 * @return Recorded message, or <code>null</code> if it isn't known.
+	 */
+	synchronized SentMessage get(long messageId) {
+		return messages.get(messageId);
+	}
+
+	static final class SentMessage {
+
+		private final Instant postedAt;
+		private final long postedNanos;
+		private final String content;
+
+		private SentMessage(Instant postedAt, long postedNanos, String content) {
+			this.postedAt = postedAt;
+			this.postedNanos = postedNanos;
+			this.content = content;
+		}
+
+		Instant postedAt() {
+			return postedAt;
+		}
+
+		/**
+		 * Returns the number of seconds elapsed since this message was posted.
+		 */
+		long ageSeconds() {
+			return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - postedNanos);
+		}
+
+		/**
+		 * Returns the last known content of this message, or <code>null</code> if it isn't known.
+		 */
+		String content() {
+			return content;
+		}
+
+	}
+
+}
@@ -0,0 +1,64 @@
+package org.sobotics.chatexchange.chat;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs tasks one at a time, in the order they were submitted, on a shared executor. Several serial executors can share the
+ * same pool: the tasks of each of them are ordered, while different serial executors run in parallel.
+ */
+final class SerialExecutor implements Executor {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SerialExecutor.class);
+
+	private final Executor executor;
+	// guarded by this
+	private final Queue<Runnable> tasks = new ArrayDeque<>();
+	private boolean running;
+
+	SerialExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		synchronized (this) {
+			tasks.add(task);
+			if (running) return;
+			running = true;
+		}
+		try {
+			executor.execute(this::runTasks);
+		} catch (RejectedExecutionException e) {
+			synchronized (this) {
+				tasks.clear();
+				running = false;
+			}
+			throw e;
+		}
+	}
+
+	private void runTasks() {
+		while (true) {
+			Runnable task;
+			synchronized (this) {
+				task = tasks.poll();
+				if (task == null) {
+					running = false;
+					return;
+				}
+			}
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				LOGGER.error("Couldn't execute task", e);
+			}
+		}
+	}
+
+}
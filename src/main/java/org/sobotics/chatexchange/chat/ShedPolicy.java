@@ -0,0 +1,24 @@
+package org.sobotics.chatexchange.chat;
+
+/**
+ * What a room does with the events it sheds when it is flooded. See {@link FloodControl}.
+ */
+public enum ShedPolicy {
+
+	/**
+	 * The shed events are dropped.
+	 */
+	DROP,
+
+	/**
+	 * One shed event in 10 is still dispatched, so that listeners keep a view of the flood; the others are dropped.
+	 */
+	SAMPLE,
+
+	/**
+	 * The shed events are dropped, and the {@link LoadShedding} reports list the ids of the messages they were about, so
+	 * that they can be looked at later.
+	 */
+	SUMMARIZE
+
+}
@@ -2,10 +2,26 @@ package org.sobotics.chatexchange.chat;
 
 import java.io.IOException;
 import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -13,8 +29,11 @@ import org.jsoup.Connection.Response;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sobotics.chatexchange.chat.event.EventType;
+import org.sobotics.chatexchange.chat.metrics.ChatMetrics;
 
 /**
  * Client used to authenticate with Stack Exchange. To properly dispose of this client once created, it is expected to be
@@ -24,6 +43,8 @@ import org.slf4j.LoggerFactory;
 public class StackExchangeClient implements AutoCloseable {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(StackExchangeClient.class);
+	private static final int IO_THREADS = 4;
+	private static final int VIRTUAL_IO_PERMITS_PER_HOST = 16;
 
 	/**
 	 * @deprecated in 1.2.0. See meta: https://meta.stackexchange.com/q/307647/347985
@@ -38,12 +59,18 @@ public class StackExchangeClient implements AutoCloseable {
 	private String openIdProvider;
 
 	private HttpClient httpClient;
-	private Map<String, String> cookies = new HashMap<>();
+	private final CookieJar cookies = new CookieJar();
 
 	/**
-	 * Rooms the user is currently in
+	 * Rooms the user is currently in, and their keys (host and id), reserved while they are being joined
 	 */
-	private List<Room> rooms = new ArrayList<>();
+	private final List<Room> rooms = new CopyOnWriteArrayList<>();
+	private final Set<String> joinedRooms = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Logins to the hosts of the rooms, in progress or completed
+	 */
+	private final ConcurrentMap<ChatHost, CompletableFuture<Void>> sessions = new ConcurrentHashMap<>();
 	
 	/**
 	 * The user's e-mail-address
@@ -64,13 +91,98 @@ public class StackExchangeClient implements AutoCloseable {
 	 */
 	private boolean autoCreateAccount = true;
 
+	/**
+	 * Metrics the client and its rooms report to
+	 */
+	private ChatMetrics metrics = ChatMetrics.NO_OP;
+
+	/**
+	 * Throttles of each chat host, shared by all the rooms joined on it
+	 */
+	private final Map<ChatHost, RateLimiter> rateLimiters = new EnumMap<>(ChatHost.class);
+
+	/**
+	 * Kind of threads the blocking work runs on
+	 */
+	private final ThreadMode threadMode;
+
+	/**
+	 * Executor for the I/O the rooms perform in parallel, like fetching users in chunks, shared by all the rooms, and the
+	 * executor each host uses on top of it
+	 */
+	private final ExecutorService ioExecutor;
+	private final Map<ChatHost, Executor> hostIoExecutors = new EnumMap<>(ChatHost.class);
+
+	/**
+	 * Cache of the images uploaded by the rooms, if any
+	 */
+	private ImageUploadCache imageUploadCache;
+
+	/**
+	 * Drops the events already received by the rooms, if enabled
+	 */
+	private EventDeduplicator eventDeduplicator;
+	private int eventDeduplicationWindow;
+
+	/**
+	 * Listeners of and subscriptions to the events of all the rooms, and the executor delivering them
+	 */
+	private final EventBus eventBus = new EventBus();
+	private final List<EventSubscription<?>> eventSubscriptions = new CopyOnWriteArrayList<>();
+	private final ExecutorService eventExecutor;
+
+	/**
+	 * Limits the events dispatched by each room, if enabled
+	 */
+	private FloodControl floodControl;
+
+	/**
+	 * Whether the WebSockets of the rooms offer the permessage-deflate extension
+	 */
+	private boolean webSocketCompression;
+
+	/**
+	 * Directory where the rooms save their checkpoints, if any
+	 */
+	private Path checkpointDirectory;
+
 	/**
 	 * Constructs the client with the provided credentials. Those will be the credentials used to send messages.
 	 * @param email Email of the account to connect with.
 	 * @param password Password of the account to connect with.
 	 */
 	public StackExchangeClient(String email, String password) {
+		this(email, password, ThreadMode.PLATFORM);
+	}
+
+	/**
+	 * Constructs the client with the provided credentials, running its blocking work on the given kind of threads.
+	 * @param email Email of the account to connect with.
+	 * @param password Password of the account to connect with.
+	 * @param threadMode Kind of threads to run the reads of the rooms and their event listeners on.
+	 * @throws IllegalArgumentException If the thread mode is not available on the running Java version.
+	 * @see ThreadMode#isAvailable()
+	 */
+	public StackExchangeClient(String email, String password, ThreadMode threadMode) {
+		if (!threadMode.isAvailable()) {
+			throw new IllegalArgumentException("Thread mode " + threadMode + " is not available on Java " + System.getProperty("java.version"));
+		}
 		httpClient = new HttpClient();
+		this.threadMode = threadMode;
+		if (threadMode == ThreadMode.VIRTUAL) {
+			ioExecutor = Threads.newVirtualThreadPerTaskExecutor("chat-io");
+			eventExecutor = Threads.newVirtualThreadPerTaskExecutor("chat-events");
+		} else {
+			ThreadPoolExecutor ioThreads = new ThreadPoolExecutor(IO_THREADS, IO_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+			ioThreads.allowCoreThreadTimeOut(true);
+			ioExecutor = ioThreads;
+			eventExecutor = Executors.newCachedThreadPool();
+		}
+		for (ChatHost host : ChatHost.values()) {
+			rateLimiters.put(host, new RateLimiter());
+			// virtual threads are unbounded, so each host bounds its own reads instead of the pool bounding all of them
+			hostIoExecutors.put(host, threadMode == ThreadMode.VIRTUAL ? new PermitExecutor(ioExecutor, VIRTUAL_IO_PERMITS_PER_HOST) : ioExecutor);
+		}
 		this.email = email;
 		this.password = password;
 	}
@@ -119,18 +231,18 @@ public class StackExchangeClient implements AutoCloseable {
 			
 			String formUrl = "https://" + host + formElement.attr("action");
 			
-			Response formResponse = httpClient.post(formUrl, cookies, formDataArray);
-			if (formResponse.parse().getElementsByClass("js-inbox-button").first() == null) {
-				LOGGER.debug(formResponse.parse().html());
+			Document formDocument = httpClient.post(formUrl, cookies, formDataArray).parse();
+			if (formDocument.getElementsByClass("js-inbox-button").first() == null) {
+				LOGGER.debug(formDocument.html());
 				throw new IllegalStateException("Unable to create account on " + host + "! Please create the account manually.");
 			} // if
 		} // if
 		
 		
 		// check if login succeeded
-		Response checkResponse = httpClient.get("https://"+originalHost+"/users/current", cookies);
-		if (checkResponse.parse().getElementsByClass("js-inbox-button").first() == null) {
-			LOGGER.debug(checkResponse.parse().html());
+		Document checkDocument = httpClient.get("https://"+originalHost+"/users/current", cookies).parse();
+		if (checkDocument.getElementsByClass("js-inbox-button").first() == null) {
+			LOGGER.debug(checkDocument.html());
 			throw new IllegalStateException("Unable to login to Stack Exchange. (Site: " + originalHost + " via " + host + ")");
 		} // if
 	} // seLogin
@@ -165,34 +277,70 @@ public class StackExchangeClient implements AutoCloseable {
 	 * @return <code>Room</code> joined.
 	 */
 	public Room joinRoom(ChatHost host, int roomId) {
-		String mainSiteHost = host.getName();
-		
-		boolean alreadyLoggedIn = false;
+		return joinRoom(host, roomId, RoomMode.FULL);
+	}
+
+	/**
+	 * Joins the given room for the given chat host, in the given mode. Only what the mode needs is set up: for example, a room
+	 * joined in {@link RoomMode#SEND_ONLY} mode doesn't open a WebSocket.
+	 * <p>Trying to join a room in which you are already in results in a <code>ChatOperationException</code>.
+	 * @param host Host of the chat room to join.
+	 * @param roomId Id of the room to join.
+	 * @param mode Mode to join the room in.
+	 * @return <code>Room</code> joined.
+	 */
+	public Room joinRoom(ChatHost host, int roomId, RoomMode mode) {
+		login(host);
 		
-		for (Room room : this.rooms) {
-			if (room.getHost().equals(host)) {
-				alreadyLoggedIn = true;
-				break;
-			} // if
-		} // for rooms
+		String roomKey = host.name() + "/" + roomId;
+		if (!joinedRooms.add(roomKey)) {
+			throw new ChatOperationException("Cannot join a room you are already in.");
+		}
 		
-		if (!alreadyLoggedIn) {
-			//not logged in on that site yet
+		Room chatRoom;
+		try {
+			chatRoom = new Room(host, roomId, httpClient, hostIoExecutors.get(host), cookies, metrics, rateLimiters.get(host), checkpointDirectory == null ? null : RoomCheckpoint.file(checkpointDirectory, host, roomId), mode, threadMode, webSocketCompression);
+		} catch (RuntimeException e) {
+			joinedRooms.remove(roomKey);
+			throw e;
+		}
+		chatRoom.setImageUploadCache(imageUploadCache);
+		chatRoom.setEventDeduplicator(eventDeduplicator);
+		chatRoom.setFloodControl(floodControl);
+		if (mode.listens()) {
+			chatRoom.setEventBus(eventBus, eventExecutor);
+			eventSubscriptions.forEach(chatRoom::addEventSubscription);
+		}
+		rooms.add(chatRoom);
+		return chatRoom;
+	}
+
+	/**
+	 * Logs in to the main site of the given host, unless already logged in. Concurrent calls for the same host wait for a
+	 * single login, while logins to different hosts run in parallel. A failed login is retried by the next call.
+	 */
+	private void login(ChatHost host) {
+		CompletableFuture<Void> login = new CompletableFuture<>();
+		CompletableFuture<Void> existing = sessions.putIfAbsent(host, login);
+		if (existing == null) {
+			String mainSiteHost = host.getName();
 			try {
-				this.seLogin(email, password, mainSiteHost);
-			} catch (IOException e) {
+				seLogin(email, password, mainSiteHost);
+				login.complete(null);
+			} catch (IOException | RuntimeException e) {
 				LOGGER.error("Unable to login on " + mainSiteHost + " for " + host.getBaseUrl(), e);
-				throw new ChatOperationException("Login to " + mainSiteHost + " failed!");
+				sessions.remove(host, login);
+				login.completeExceptionally(e instanceof RuntimeException ? e : new ChatOperationException("Login to " + mainSiteHost + " failed!", e));
 			}
+		} else {
+			login = existing;
 		}
-		
-		if (rooms.stream().anyMatch(r -> r.getHost().equals(host) && r.getRoomId() == roomId)) {
-			throw new ChatOperationException("Cannot join a room you are already in.");
+		try {
+			login.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw e;
 		}
-		
-		Room chatRoom = new Room(host, roomId, httpClient, cookies);
-		rooms.add(chatRoom);
-		return chatRoom;
 	}
 
 	/**
@@ -248,6 +396,199 @@ public class StackExchangeClient implements AutoCloseable {
 	}
 	
 	
+	/**
+	 * Returns the metrics the client and its rooms report to. By default, this is {@link ChatMetrics#NO_OP}.
+	 * @return Current metrics.
+	 */
+	public ChatMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Sets the metrics the client and its rooms report to. This affects the HTTP requests made from now on and the rooms
+	 * joined afterwards: rooms already joined keep reporting to the previous metrics.
+	 * @param metrics New metrics, for example an {@link org.sobotics.chatexchange.chat.metrics.InMemoryChatMetrics}.
+	 */
+	public void setMetrics(ChatMetrics metrics) {
+		this.metrics = Objects.requireNonNull(metrics, "metrics");
+		httpClient.setMetrics(metrics);
+	}
+
+
+	/**
+	 * Returns the cache of the images uploaded by the rooms of this client. By default, there is none.
+	 * @return Current image upload cache, or <code>null</code> if there is none.
+	 */
+	public ImageUploadCache getImageUploadCache() {
+		return imageUploadCache;
+	}
+
+	/**
+	 * Sets the cache of the images uploaded by the rooms of this client, including the rooms already joined. An image whose
+	 * content is in the cache is not uploaded again: the URL it was previously uploaded to is returned instead.
+	 * @param imageUploadCache New image upload cache, or <code>null</code> to upload every image.
+	 */
+	public void setImageUploadCache(ImageUploadCache imageUploadCache) {
+		this.imageUploadCache = imageUploadCache;
+		rooms.forEach(room -> room.setImageUploadCache(imageUploadCache));
+	}
+
+
+	/**
+	 * Returns the number of event ids remembered per chat host to drop duplicate events, or 0 if duplicates are not dropped.
+	 * @return Size of the event deduplication window.
+	 */
+	public int getEventDeduplicationWindow() {
+		return eventDeduplicationWindow;
+	}
+
+	/**
+	 * Makes the rooms of this client, including the rooms already joined, drop the events that were already received by any
+	 * of them. The same event can be received more than once when rooms are joined on the same host, or when the WebSocket
+	 * reconnects; dropping it happens before any work is done to decode it, like retrieving its message.
+	 * <p>By default, duplicates are not dropped.
+	 * @param windowSize Number of the last event ids to remember for each chat host, or 0 to stop dropping duplicates.
+	 */
+	public void setEventDeduplicationWindow(int windowSize) {
+		if (windowSize < 0) {
+			throw new IllegalArgumentException("The window size cannot be negative, was " + windowSize);
+		}
+		eventDeduplicationWindow = windowSize;
+		eventDeduplicator = windowSize == 0 ? null : new EventDeduplicator(windowSize);
+		rooms.forEach(room -> room.setEventDeduplicator(eventDeduplicator));
+	}
+
+
+	/**
+	 * Adds a listener for the given event, raised in any room of this client, including the rooms joined afterwards. Rooms
+	 * joined in {@link RoomMode#SEND_ONLY} mode raise no event.
+	 * @param eventType Event to listen to.
+	 * @param listener Listener to add to this event.
+	 * @param <T> Type of the event.
+	 * @see #addEventListener(EventType, RoomFilter, Consumer)
+	 */
+	public <T> void addEventListener(EventType<T> eventType, Consumer<T> listener) {
+		addEventListener(eventType, RoomFilter.all(), listener);
+	}
+
+	/**
+	 * Adds a listener for the given event, raised in the rooms of this client selected by the given filter, including the
+	 * rooms joined afterwards.
+	 * <p>The listeners of the client are kept in a single registry shared by all the rooms. For each room, they are called
+	 * in the order the events were raised in that room, while the events of different rooms are processed in parallel. Rooms
+	 * don't decode the events that neither their own listeners nor the listeners of the client selecting them listen to.
+	 * @param eventType Event to listen to.
+	 * @param filter Filter of the rooms to listen to, evaluated once per room.
+	 * @param listener Listener to add to this event.
+	 * @param <T> Type of the event.
+	 */
+	public <T> void addEventListener(EventType<T> eventType, RoomFilter filter, Consumer<T> listener) {
+		eventBus.add(eventType, filter, listener);
+	}
+
+	/**
+	 * Returns a stream of the events of the given type raised in all the rooms of this client, buffering up to 256 events
+	 * not yet requested by the subscriber, and dropping the oldest ones when it is full.
+	 * @param eventType Type of the events.
+	 * @param <T> Type of the events.
+	 * @return Publisher of the events.
+	 * @see #events(EventType, int, OverflowStrategy)
+	 */
+	public <T> Publisher<T> events(EventType<T> eventType) {
+		return events(eventType, Room.EVENT_STREAM_BUFFER_SIZE, OverflowStrategy.DROP_OLDEST);
+	}
+
+	/**
+	 * Returns a stream of the events of the given type raised in all the rooms of this client, including the rooms joined
+	 * after subscribing, as a Reactive Streams publisher. Rooms joined in {@link RoomMode#SEND_ONLY} mode raise no event.
+	 * <p>Buffering works as with {@link Room#events(EventType, int, OverflowStrategy)}; events are delivered on a thread pool
+	 * of the client, one at a time per subscriber. The stream completes when this client is closed.
+	 * @param eventType Type of the events.
+	 * @param bufferSize Maximum number of events buffered for a subscriber.
+	 * @param overflowStrategy What to do when the buffer of a subscriber is full.
+	 * @param <T> Type of the events.
+	 * @return Publisher of the events.
+	 */
+	public <T> Publisher<T> events(EventType<T> eventType, int bufferSize, OverflowStrategy overflowStrategy) {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("The buffer size must be positive, was " + bufferSize);
+		}
+		return subscriber -> {
+			EventSubscription<T> subscription = new EventSubscription<>(eventType, Objects.requireNonNull(subscriber), bufferSize, overflowStrategy, eventExecutor, this, s -> {
+				eventSubscriptions.remove(s);
+				rooms.forEach(room -> room.removeEventSubscription(s));
+			});
+			eventSubscriptions.add(subscription);
+			rooms.stream().filter(room -> room.getMode().listens()).forEach(room -> room.addEventSubscription(subscription));
+			subscription.start();
+		};
+	}
+
+	/**
+	 * Returns the flood control limiting the events dispatched by each room. By default, there is none.
+	 * @return Flood control of the rooms, or <code>null</code> if every event is dispatched.
+	 */
+	public FloodControl getFloodControl() {
+		return floodControl;
+	}
+
+	/**
+	 * Makes each room of this client, including the rooms already joined, limit the rate of the message events it dispatches
+	 * according to the given flood control. Each room has its own limits, so that a flooded room doesn't starve the others.
+	 * @param floodControl Flood control to enforce, or <code>null</code> to dispatch every event.
+	 */
+	public void setFloodControl(FloodControl floodControl) {
+		this.floodControl = floodControl;
+		rooms.forEach(room -> room.setFloodControl(floodControl));
+	}
+
+	/**
+	 * Tells whether the WebSockets of the rooms of this client ask for compression. By default, they don't.
+	 * @return <code>true</code> if the WebSockets offer the permessage-deflate extension.
+	 */
+	public boolean isWebSocketCompression() {
+		return webSocketCompression;
+	}
+
+	/**
+	 * Makes the WebSockets of the rooms of this client offer the permessage-deflate extension (RFC 7692), compressing the
+	 * events sent by the chat server. The chat feed being verbose JSON, this saves most of its bandwidth, at the cost of
+	 * inflating each message. The server may decline the extension, in which case the events are received uncompressed.
+	 * <p>It applies to the rooms joined afterwards, and to the rooms already joined when their WebSocket next connects. The
+	 * bytes received, before and after inflating, are reported to the metrics of the client.
+	 * @param webSocketCompression <code>true</code> to offer compression.
+	 */
+	public void setWebSocketCompression(boolean webSocketCompression) {
+		this.webSocketCompression = webSocketCompression;
+		rooms.forEach(room -> room.setWebSocketCompression(webSocketCompression));
+	}
+
+
+	/**
+	 * Returns the directory where the rooms save their checkpoints. By default, there is none.
+	 * @return Directory of the checkpoints, or <code>null</code> if the rooms do not save checkpoints.
+	 */
+	public Path getCheckpointDirectory() {
+		return checkpointDirectory;
+	}
+
+	/**
+	 * Makes the rooms joined from now on save their state to a checkpoint file in the given directory, every minute and when
+	 * they are left: the position in the event stream, the users present, the pingable users and the messages known to be
+	 * deleted.
+	 * <p>When a room is joined again, for example after a restart, it resumes from its checkpoint if it is less than an hour
+	 * old: the events missed meanwhile are received, the events already processed are skipped, and the users are not synced
+	 * again. The pingable users are reused until their daily sync is due.
+	 * @param checkpointDirectory Existing directory to save the checkpoints to, or <code>null</code> to stop saving checkpoints.
+	 */
+	public void setCheckpointDirectory(Path checkpointDirectory) {
+		if (checkpointDirectory != null && !Files.isDirectory(checkpointDirectory)) {
+			throw new IllegalArgumentException("The checkpoint directory " + checkpointDirectory + " does not exist");
+		}
+		this.checkpointDirectory = checkpointDirectory;
+	}
+	
+	
 	/**
 	 * Returns the cookies for the first room with the given host
 	 * @param host {@link ChatHost} to search for
@@ -272,6 +613,9 @@ public class StackExchangeClient implements AutoCloseable {
 	@Override
 	public void close() {
 		rooms.forEach(Room::leave);
+		eventSubscriptions.forEach(subscription -> subscription.completeIfOwnedBy(this));
+		eventExecutor.shutdown();
+		ioExecutor.shutdown();
 	}
 
 }
@@ -0,0 +1,28 @@
+package org.sobotics.chatexchange.chat;
+
+/**
+ * The kinds of threads a client runs its blocking work on: the reads of the rooms, and their event listeners. The mode is
+ * chosen when creating the client, with {@link StackExchangeClient#StackExchangeClient(String, String, ThreadMode)}.
+ */
+public enum ThreadMode {
+
+	/**
+	 * Platform threads, from bounded pools: reads run on 4 threads shared by all the rooms. This is the default mode.
+	 */
+	PLATFORM,
+
+	/**
+	 * Virtual threads, one per task: the number of reads in flight is bounded by 16 per chat host instead of by a thread
+	 * pool, so that thousands of them cost little memory. This mode needs Java 21 or later.
+	 */
+	VIRTUAL;
+
+	/**
+	 * Tells whether this mode can be used on the running Java version.
+	 * @return <code>true</code> if this mode is available.
+	 */
+	public boolean isAvailable() {
+		return this != VIRTUAL || Threads.supportsVirtualThreads();
+	}
+
+}
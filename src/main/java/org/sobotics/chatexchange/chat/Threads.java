@@ -0,0 +1,22 @@
+package org.sobotics.chatexchange.chat;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Creates the executors running on virtual threads, see {@link ThreadMode#VIRTUAL}.
+ * <p>This is the Java 8 version of this class, where virtual threads are not available. The multi-release jar contains a
+ * Java 21 version, under <code>src/main/java21</code>, that creates them. Both versions must keep the same methods.
+ */
+final class Threads {
+
+	private Threads() { }
+
+	static boolean supportsVirtualThreads() {
+		return false;
+	}
+
+	static ExecutorService newVirtualThreadPerTaskExecutor(String name) {
+		throw new UnsupportedOperationException("Virtual threads need Java 21 or later");
+	}
+
+}
@@ -0,0 +1,45 @@
+package org.sobotics.chatexchange.chat;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Bounds the time asynchronous operations can take. A single daemon thread, shared by all the clients, fails the operations
+ * that did not complete in time; it only completes futures, so it is never held up by a slow operation.
+ */
+final class Timeouts {
+
+	private static final ScheduledThreadPoolExecutor SCHEDULER = new ScheduledThreadPoolExecutor(1, runnable -> {
+		Thread thread = new Thread(runnable, "chat-timeouts");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	static {
+		SCHEDULER.setRemoveOnCancelPolicy(true);
+	}
+
+	private Timeouts() { }
+
+	/**
+	 * Fails the given future with a {@link ChatOperationException}, caused by a {@link TimeoutException}, if it doesn't
+	 * complete within the given timeout.
+	 * @param future Future to bound.
+	 * @param timeout Maximum time the future can take to complete.
+	 * @param operation Description of the operation, for the error message.
+	 * @return The given future.
+	 */
+	static <T> CompletableFuture<T> within(CompletableFuture<T> future, Duration timeout, String operation) {
+		if (future.isDone()) return future;
+		ScheduledFuture<?> timer = SCHEDULER.schedule(() -> {
+			future.completeExceptionally(new ChatOperationException(operation + " timed out after " + timeout.toMillis() + " ms", new TimeoutException()));
+		}, timeout.toNanos(), TimeUnit.NANOSECONDS);
+		future.whenComplete((result, t) -> timer.cancel(false));
+		return future;
+	}
+
+}
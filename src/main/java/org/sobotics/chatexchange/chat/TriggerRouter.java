@@ -0,0 +1,307 @@
+package org.sobotics.chatexchange.chat;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Routes texts, like the content of chat messages, to the handlers of the triggers they match. Three kinds of triggers are
+ * supported: commands, matching texts starting with a prefix; keywords, matching texts containing a whole word; and literals,
+ * matching texts containing a string anywhere. Matching ignores case.
+ * <p>All the triggers are compiled together: the commands into a prefix trie, and the keywords and literals into an
+ * Aho-Corasick automaton. Routing a text scans it once, whatever the number of triggers, and each handler is returned at most
+ * once per text. The compiled form is rebuilt lazily after triggers are added.
+ * @param <T> Type of the payload the handlers receive.
+ */
+final class TriggerRouter<T> {
+
+	/**
+	 * The kinds of triggers.
+	 */
+	enum Kind {
+
+		/**
+		 * Matches texts starting with the pattern, ignoring leading whitespace.
+		 */
+		COMMAND,
+
+		/**
+		 * Matches texts containing the pattern as a whole word, that is not surrounded by letters or digits.
+		 */
+		KEYWORD,
+
+		/**
+		 * Matches texts containing the pattern anywhere.
+		 */
+		LITERAL
+
+	}
+
+	private final List<Trigger<T>> triggers = new ArrayList<>();
+	private volatile Compiled<T> compiled = new Compiled<>(Collections.emptyList());
+
+	/**
+	 * Adds a trigger.
+	 * @param kind Kind of the trigger.
+	 * @param pattern Pattern of the trigger, which cannot be empty.
+	 * @param handler Handler to return when the trigger matches.
+	 */
+	void add(Kind kind, String pattern, Consumer<? super T> handler) {
+		if (pattern.isEmpty()) {
+			throw new IllegalArgumentException("The pattern of a trigger cannot be empty");
+		}
+		synchronized (triggers) {
+			triggers.add(new Trigger<>(kind, lowerCase(pattern), handler));
+			compiled = null;
+		}
+	}
+
+	/**
+	 * Tells whether any trigger was added.
+	 * @return <code>true</code> if there is no trigger.
+	 */
+	boolean isEmpty() {
+		synchronized (triggers) {
+			return triggers.isEmpty();
+		}
+	}
+
+	/**
+	 * Returns the handlers of the triggers matched by the given text, in the order the triggers were added.
+	 * @param text Text to route.
+	 * @return Handlers to invoke, each at most once.
+	 */
+	List<Consumer<? super T>> route(String text) {
+		Compiled<T> current = compiled;
+		if (current == null) {
+			synchronized (triggers) {
+				current = compiled;
+				if (current == null) {
+					compiled = current = new Compiled<>(new ArrayList<>(triggers));
+				}
+			}
+		}
+		return current.route(lowerCase(text));
+	}
+
+	private static String lowerCase(String text) {
+		char[] chars = text.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = Character.toLowerCase(chars[i]);
+		}
+		return new String(chars);
+	}
+
+	private static final class Trigger<T> {
+
+		private final Kind kind;
+		private final String pattern;
+		private final Consumer<? super T> handler;
+
+		private Trigger(Kind kind, String pattern, Consumer<? super T> handler) {
+			this.kind = kind;
+			this.pattern = pattern;
+			this.handler = handler;
+		}
+
+	}
+
+	/**
+	 * Immutable compiled form of a set of triggers. Both the prefix trie and the automaton are stored as arrays: the children
+	 * of a node are sorted by character and found with a binary search.
+	 */
+	private static final class Compiled<T> {
+
+		private final List<Trigger<T>> triggers;
+		private final Trie commands;
+		private final Trie patterns;
+		/**
+		 * For each node of the automaton: node to continue from on a mismatch, and nearest node with an output on that chain
+		 */
+		private final int[] failure, outputLink;
+
+		private Compiled(List<Trigger<T>> triggers) {
+			this.triggers = triggers;
+			Trie.Builder commandBuilder = new Trie.Builder();
+			Trie.Builder patternBuilder = new Trie.Builder();
+			for (int i = 0; i < triggers.size(); i++) {
+				Trigger<T> trigger = triggers.get(i);
+				(trigger.kind == Kind.COMMAND ? commandBuilder : patternBuilder).add(trigger.pattern, i);
+			}
+			commands = commandBuilder.build();
+			patterns = patternBuilder.build();
+			failure = new int[patterns.size()];
+			outputLink = new int[patterns.size()];
+			linkFailures();
+		}
+
+		/**
+		 * Computes the failure links of the automaton, breadth-first, so that the links of shorter paths are known first.
+		 */
+		private void linkFailures() {
+			Arrays.fill(outputLink, -1);
+			Queue<Integer> queue = new ArrayDeque<>();
+			for (int child : patterns.children[0]) {
+				failure[child] = 0;
+				queue.add(child);
+			}
+			while (!queue.isEmpty()) {
+				int node = queue.poll();
+				for (int i = 0; i < patterns.children[node].length; i++) {
+					int child = patterns.children[node][i];
+					char c = patterns.labels[node][i];
+					int fallback = failure[node];
+					int next;
+					while ((next = patterns.child(fallback, c)) < 0 && fallback != 0) {
+						fallback = failure[fallback];
+					}
+					failure[child] = next < 0 ? 0 : next;
+					int target = failure[child];
+					outputLink[child] = patterns.outputs[target].length > 0 ? target : outputLink[target];
+					queue.add(child);
+				}
+			}
+		}
+
+		private List<Consumer<? super T>> route(String text) {
+			boolean[] matched = new boolean[triggers.size()];
+			boolean any = false;
+			// commands: walk the prefix trie from the start of the text
+			int start = 0;
+			while (start < text.length() && Character.isWhitespace(text.charAt(start))) start++;
+			int node = 0;
+			for (int i = start; i < text.length() && node >= 0; i++) {
+				node = commands.child(node, text.charAt(i));
+				if (node >= 0) {
+					for (int trigger : commands.outputs[node]) {
+						matched[trigger] = any = true;
+					}
+				}
+			}
+			// keywords and literals: run the automaton over the text
+			node = 0;
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				int next;
+				while ((next = patterns.child(node, c)) < 0 && node != 0) {
+					node = failure[node];
+				}
+				node = next < 0 ? 0 : next;
+				for (int output = patterns.outputs[node].length > 0 ? node : outputLink[node]; output >= 0; output = outputLink[output]) {
+					for (int trigger : patterns.outputs[output]) {
+						if (!matched[trigger] && matches(triggers.get(trigger), text, i + 1)) {
+							matched[trigger] = any = true;
+						}
+					}
+				}
+			}
+			if (!any) return Collections.emptyList();
+			List<Consumer<? super T>> handlers = new ArrayList<>();
+			for (int i = 0; i < matched.length; i++) {
+				// a handler added for several triggers is still returned once
+				if (matched[i] && !handlers.contains(triggers.get(i).handler)) handlers.add(triggers.get(i).handler);
+			}
+			return handlers;
+		}
+
+		private static boolean matches(Trigger<?> trigger, String text, int end) {
+			if (trigger.kind != Kind.KEYWORD) return true;
+			int start = end - trigger.pattern.length();
+			return (start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1)))
+					&& (end == text.length() || !Character.isLetterOrDigit(text.charAt(end)));
+		}
+
+	}
+
+	/**
+	 * Trie of patterns, stored as arrays indexed by node. Node 0 is the root.
+	 */
+	private static final class Trie {
+
+		private static final int[] NO_OUTPUTS = new int[0];
+
+		/**
+		 * For each node: characters of the edges to its children, sorted, and the corresponding children
+		 */
+		private final char[][] labels;
+		private final int[][] children;
+		/**
+		 * For each node: indexes of the triggers whose pattern ends at this node
+		 */
+		private final int[][] outputs;
+
+		private Trie(char[][] labels, int[][] children, int[][] outputs) {
+			this.labels = labels;
+			this.children = children;
+			this.outputs = outputs;
+		}
+
+		private int size() {
+			return labels.length;
+		}
+
+		private int child(int node, char c) {
+			int index = Arrays.binarySearch(labels[node], c);
+			return index < 0 ? -1 : children[node][index];
+		}
+
+		private static final class Builder {
+
+			private final List<Map<Character, Integer>> edges = new ArrayList<>();
+			private final List<List<Integer>> outputs = new ArrayList<>();
+
+			private Builder() {
+				newNode();
+			}
+
+			private int newNode() {
+				edges.add(new TreeMap<>());
+				outputs.add(new ArrayList<>());
+				return edges.size() - 1;
+			}
+
+			private void add(String pattern, int trigger) {
+				int node = 0;
+				for (int i = 0; i < pattern.length(); i++) {
+					Integer next = edges.get(node).get(pattern.charAt(i));
+					if (next == null) {
+						next = newNode();
+						edges.get(node).put(pattern.charAt(i), next);
+					}
+					node = next;
+				}
+				outputs.get(node).add(trigger);
+			}
+
+			private Trie build() {
+				int size = edges.size();
+				char[][] labels = new char[size][];
+				int[][] children = new int[size][];
+				int[][] nodeOutputs = new int[size][];
+				for (int node = 0; node < size; node++) {
+					Map<Character, Integer> nodeEdges = edges.get(node);
+					labels[node] = new char[nodeEdges.size()];
+					children[node] = new int[nodeEdges.size()];
+					int i = 0;
+					for (Map.Entry<Character, Integer> edge : nodeEdges.entrySet()) {
+						labels[node][i] = edge.getKey();
+						children[node][i] = edge.getValue();
+						i++;
+					}
+					List<Integer> triggers = outputs.get(node);
+					nodeOutputs[node] = triggers.isEmpty() ? NO_OUTPUTS : triggers.stream().mapToInt(Integer::intValue).toArray();
+				}
+				return new Trie(labels, children, nodeOutputs);
+			}
+
+		}
+
+	}
+
+}
@@ -0,0 +1,113 @@
+package org.sobotics.chatexchange.chat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.function.LongConsumer;
+
+/**
+ * Input stream used as the body of an image upload. It reads straight from a file channel into the buffer of the HTTP client,
+ * or from any other input stream, reports the number of bytes read from the source and can be cancelled. It can also hash the
+ * content as it is read.
+ * <p>The HTTP client buffers the whole body before sending it: the progress tracks the reading of the source, not the bytes
+ * sent over the network. Cancelling the stream makes the next read fail, which stops the upload only if the source has not
+ * been fully read yet.
+ */
+final class UploadStream extends InputStream {
+
+	private final FileChannel channel;
+	private final InputStream delegate;
+	private final LongConsumer progress;
+	private MessageDigest digest;
+	private long uploaded;
+	private volatile boolean cancelled;
+
+	private UploadStream(FileChannel channel, InputStream delegate, LongConsumer progress) {
+		this.channel = channel;
+		this.delegate = delegate;
+		this.progress = progress;
+	}
+
+	/**
+	 * Creates a stream reading the given file channel, from its current position.
+	 * @param channel File channel to read.
+	 * @param progress Callback receiving the number of bytes read from the source so far, may be <code>null</code>.
+	 * @return Stream reading the channel.
+	 */
+	static UploadStream of(FileChannel channel, LongConsumer progress) {
+		return new UploadStream(channel, null, progress);
+	}
+
+	/**
+	 * Creates a stream reading the given input stream.
+	 * @param inputStream Input stream to read.
+	 * @param progress Callback receiving the number of bytes read from the source so far, may be <code>null</code>.
+	 * @return Stream reading the input stream.
+	 */
+	static UploadStream of(InputStream inputStream, LongConsumer progress) {
+		return new UploadStream(null, inputStream, progress);
+	}
+
+	/**
+	 * Makes this stream update the given digest with all the bytes read. This must be called before the first read.
+	 * @param digest Digest to update.
+	 * @return This stream.
+	 */
+	UploadStream digesting(MessageDigest digest) {
+		this.digest = digest;
+		return this;
+	}
+
+	/**
+	 * Cancels the reading of the source: any subsequent read will fail.
+	 */
+	void cancel() {
+		cancelled = true;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		int read = read(b, 0, 1);
+		return read < 0 ? -1 : b[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (cancelled) {
+			throw new InterruptedIOException("The upload was cancelled");
+		}
+		if (len == 0) return 0;
+		int read = channel != null ? channel.read(ByteBuffer.wrap(b, off, len)) : delegate.read(b, off, len);
+		if (read > 0) {
+			if (digest != null) digest.update(b, off, read);
+			uploaded += read;
+			if (progress != null) progress.accept(uploaded);
+		}
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		if (channel == null) return delegate.skip(n);
+		long skipped = Math.max(0, Math.min(n, channel.size() - channel.position()));
+		channel.position(channel.position() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public int available() throws IOException {
+		if (channel == null) return delegate.available();
+		return (int) Math.min(Integer.MAX_VALUE, Math.max(0, channel.size() - channel.position()));
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (channel != null) channel.close();
+		else delegate.close();
+	}
+
+}
@@ -107,4 +107,14 @@ public final class User {
 		return profileLink;
 	}
 
+	/**
+	 * Returns this user, as currently in the room or not.
+	 * @param currentlyInRoom Is the user currently in the room?
+	 * @return This user if it has the same presence, or a copy with the given presence.
+	 */
+	User withCurrentlyInRoom(boolean currentlyInRoom) {
+		if (this.currentlyInRoom == currentlyInRoom) return this;
+		return new User(id, name, reputation, moderator, roomOwner, lastSeenDate, lastMessageDate, currentlyInRoom, profileLink);
+	}
+
 }
@@ -20,6 +20,9 @@ import com.google.gson.JsonObject;
  * <p>All events have a instant at which they occured, represented by an {@link Instant} object (UTC). They also have the user that
  * triggered the action (ID and display name), with the exception of anonymous events (like starring).
  * For system events, the ID will be strictly negative and for anonymous events, it is will be 0.
+ * <p>Events decoded from raw events also carry the {@link System#nanoTime()} at which they went through each stage of the
+ * client: when their decoding started, right after the WebSocket frame holding them was received, when they were decoded
+ * (which includes retrieving their user and message) and when they were handed over to be dispatched to the listeners.
  * @author Tunaki
  */
 public abstract class Event {
@@ -29,6 +32,8 @@ public abstract class Event {
 	private String userName;
 	private Room room;
 	private User user;
+	private long receivedNanos, decodedNanos, dispatchNanos;
+	private boolean dispatched;
 
 	Event(JsonElement jsonElement, Room room) {
 		JsonObject jsonObject = jsonElement.getAsJsonObject();
@@ -85,6 +90,49 @@ public abstract class Event {
 		return room;
 	}
 
+	/**
+	 * Returns the time at which this event was received, that is when the decoding of the WebSocket frame holding it started.
+	 * @return Value of {@link System#nanoTime()} when this event was received.
+	 */
+	public long getReceivedNanos() {
+		return receivedNanos;
+	}
+
+	/**
+	 * Returns the time at which this event was done being decoded, including the retrieval of its user and message.
+	 * @return Value of {@link System#nanoTime()} when this event was decoded.
+	 */
+	public long getDecodedNanos() {
+		return decodedNanos;
+	}
+
+	/**
+	 * Tells whether this event was decoded from raw events and handed over to be dispatched to listeners.
+	 * @return <code>true</code> if the dispatch of this event started.
+	 */
+	public boolean isDispatched() {
+		return dispatched;
+	}
+
+	/**
+	 * Returns the time at which this event started to be dispatched to its listeners, once all the events of its WebSocket
+	 * frame were decoded. This is only meaningful if the event {@link #isDispatched() was dispatched}.
+	 * @return Value of {@link System#nanoTime()} when the dispatch of this event started.
+	 */
+	public long getDispatchNanos() {
+		return dispatchNanos;
+	}
+
+	void setDecodeTimes(long receivedNanos, long decodedNanos) {
+		this.receivedNanos = receivedNanos;
+		this.decodedNanos = decodedNanos;
+	}
+
+	void setDispatchNanos(long dispatchNanos) {
+		this.dispatchNanos = dispatchNanos;
+		dispatched = true;
+	}
+
 	/**
 	 * Returns the ID of the room this event took place. This is a short-hand for {@link Room#getRoomId()}
 	 * @return ID of the room this event took place.
@@ -58,6 +58,11 @@ public final class EventType<T> {
 	 */
 	public static final EventType<UserLeftEvent> USER_LEFT = new EventType<>(UserLeftEvent.class);
 
+	/**
+	 * Event raised when the name or the description of the chat room is changed.
+	 */
+	public static final EventType<RoomNameChangedEvent> ROOM_NAME_CHANGED = new EventType<>(RoomNameChangedEvent.class);
+
 	/**
 	 * Event raised when a message is starred, unstarred, pinned or unpinned.
 	 */
@@ -73,8 +78,11 @@ public final class EventType<T> {
 	 */
 	public static final EventType<KickedEvent> KICKED = new EventType<>(KickedEvent.class);
 
+	private final Class<T> clazz;
+
 	@SuppressWarnings("unchecked")
 	private EventType(Class<T> clazz) {
+		this.clazz = clazz;
 		LOOKUP.put((Class<Object>) clazz, (EventType<Object>) this);
 	}
 
@@ -82,4 +90,9 @@ public final class EventType<T> {
 		return LOOKUP.get(event.getClass());
 	}
 
+	@Override
+	public String toString() {
+		return clazz.getSimpleName();
+	}
+
 }
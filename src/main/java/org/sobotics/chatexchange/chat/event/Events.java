@@ -29,9 +29,20 @@ public final class Events {
 	 * @return List of events with their data.
 	 */
 	public static List<Event> fromJsonData(JsonArray events, Room room) {
+		long receivedNanos = System.nanoTime();
+		List<Event> decodedEvents = decode(events, room, receivedNanos);
+		// the events of a frame are handed over to be dispatched together, once all of them are decoded
+		long dispatchNanos = System.nanoTime();
+		for (Event event : decodedEvents) {
+			event.setDispatchNanos(dispatchNanos);
+		}
+		return decodedEvents;
+	}
+
+	private static List<Event> decode(JsonArray events, Room room, long receivedNanos) {
 		//kicked?
 		if (events.size() == 2 && jsonObjects(events).anyMatch(o -> getEventType(o) == 4) && jsonObjects(events).anyMatch(o -> getEventType(o) == 15)) {
-			return new ArrayList<>(Arrays.asList(new KickedEvent(events, room)));
+			return new ArrayList<>(Arrays.asList(decoded(new KickedEvent(events, room), receivedNanos)));
 		}
 		// TODO: handle Feeds (user_id = -2)
 		return jsonObjects(events)
@@ -42,6 +53,7 @@ public final class Events {
 					case 2: return new MessageEditedEvent(object, room);
 					case 3: return new UserEnteredEvent(object, room);
 					case 4: return new UserLeftEvent(object, room);
+					case 5: return new RoomNameChangedEvent(object, room);
 					case 6: return new MessageStarredEvent(object, room);
 					case 10: return new MessageDeletedEvent(object, room);
 					case 8: return new UserMentionedEvent(object, room);
@@ -49,7 +61,35 @@ public final class Events {
 					default:
 						return null;
 					}
-				}).filter(Objects::nonNull).collect(Collectors.toList());
+				}).filter(Objects::nonNull).map(event -> decoded(event, receivedNanos)).collect(Collectors.toList());
+	}
+
+	/**
+	 * Returns the type of the event the given raw event is decoded into, without decoding it.
+	 * @param event Raw chat event.
+	 * @return Type of the event, or <code>null</code> if the raw event isn't decoded into any event. Raw kick events are of
+	 * type {@link EventType#KICKED}, though they are decoded along with the event of the user leaving.
+	 */
+	public static EventType<?> typeOf(JsonObject event) {
+		switch (getEventType(event)) {
+		case 1: return EventType.MESSAGE_POSTED;
+		case 2: return EventType.MESSAGE_EDITED;
+		case 3: return EventType.USER_ENTERED;
+		case 4: return EventType.USER_LEFT;
+		case 5: return EventType.ROOM_NAME_CHANGED;
+		case 6: return EventType.MESSAGE_STARRED;
+		case 10: return EventType.MESSAGE_DELETED;
+		case 8: return EventType.USER_MENTIONED;
+		case 15: return EventType.KICKED;
+		case 18: return EventType.MESSAGE_REPLY;
+		default:
+			return null;
+		}
+	}
+
+	private static Event decoded(Event event, long receivedNanos) {
+		event.setDecodeTimes(receivedNanos, System.nanoTime());
+		return event;
 	}
 
 	private static Stream<JsonObject> jsonObjects(JsonArray array) {
@@ -0,0 +1,41 @@
+package org.sobotics.chatexchange.chat.event;
+
+import org.jsoup.parser.Parser;
+import org.sobotics.chatexchange.chat.Room;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Represents the event where the name or the description of the chat room was changed.
+ * <p>The content sent by the chat event is HTML encoded: this class will unescape the HTML entities.
+ */
+public class RoomNameChangedEvent extends Event {
+
+	private String roomName;
+	private String content;
+
+	RoomNameChangedEvent(JsonElement jsonElement, Room room) {
+		super(jsonElement, room);
+		JsonObject jsonObject = jsonElement.getAsJsonObject();
+		roomName = orDefault(jsonObject.get("room_name"), null, e -> Parser.unescapeEntities(e.getAsString(), false));
+		content = orDefault(jsonObject.get("content"), null, e -> Parser.unescapeEntities(e.getAsString(), false));
+	}
+
+	/**
+	 * Returns the new name of the room.
+	 * @return New name of the room.
+	 */
+	public String getRoomName() {
+		return roomName;
+	}
+
+	/**
+	 * Returns the content of this event, as displayed in chat. It holds the new name of the room and its new description.
+	 * @return Content of this event.
+	 */
+	public String getContent() {
+		return content;
+	}
+
+}
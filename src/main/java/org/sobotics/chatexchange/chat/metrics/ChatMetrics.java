@@ -0,0 +1,158 @@
+package org.sobotics.chatexchange.chat.metrics;
+
+import java.util.function.LongSupplier;
+
+import org.sobotics.chatexchange.chat.ChatHost;
+
+/**
+ * Service provider interface used by the chat client to report its metrics.
+ * <p>Meters are identified by a name, one of the constants of this interface, and tagged by the chat host and the room they
+ * relate to. Client-wide meters, like the ones for raw HTTP requests, are tagged with a room id of 0; meters that cannot be
+ * related to a host (for example requests made to a login page) are tagged with a <code>null</code> host.
+ * <p>Meters are resolved once, when the component reporting them is created, and are then updated on the hot paths of the
+ * client: implementations of {@link Counter} and {@link Timer} must be thread-safe and must not allocate when recording.
+ * @see InMemoryChatMetrics
+ */
+public interface ChatMetrics {
+
+	/**
+	 * Metrics implementation discarding everything.
+	 */
+	ChatMetrics NO_OP = NoOpChatMetrics.INSTANCE;
+
+	/**
+	 * Prefix of the timers measuring raw HTTP requests. The full name is this prefix followed by the endpoint, like
+	 * <code>chat.http.messages.new</code>.
+	 */
+	String HTTP_REQUEST_PREFIX = "chat.http.";
+
+	/**
+	 * Counter of HTTP requests that failed, with an I/O error or an error status.
+	 */
+	String HTTP_ERRORS = "chat.http.errors";
+
+	/**
+	 * Timer of chat operations (sending, editing, deleting messages...) including the time spent waiting on throttles.
+	 */
+	String ROOM_POST = "chat.room.post";
+
+	/**
+	 * Counter of chat operations that were throttled by the server and had to be retried.
+	 */
+	String ROOM_POST_THROTTLED = "chat.room.post.throttled";
+
+	/**
+	 * Counter of chat operations that failed.
+	 */
+	String ROOM_POST_FAILED = "chat.room.post.failed";
+
+	/**
+	 * Counter of WebSocket connections opened.
+	 */
+	String WEB_SOCKET_CONNECTED = "chat.websocket.connected";
+
+	/**
+	 * Counter of WebSocket connections that could not be opened.
+	 */
+	String WEB_SOCKET_CONNECT_FAILED = "chat.websocket.connect.failed";
+
+	/**
+	 * Counter of WebSocket connections closed.
+	 */
+	String WEB_SOCKET_CLOSED = "chat.websocket.closed";
+
+	/**
+	 * Counter of WebSocket connections restarted after a period of inactivity.
+	 */
+	String WEB_SOCKET_RECONNECTED = "chat.websocket.reconnected";
+
+	/**
+	 * Counter of WebSocket data frames received, as sent over the network. A message can span several frames.
+	 */
+	String WEB_SOCKET_FRAMES = "chat.websocket.frames";
+
+	/**
+	 * Counter of the bytes of payload received over the WebSocket, compressed if permessage-deflate was negotiated.
+	 */
+	String WEB_SOCKET_BYTES_RECEIVED = "chat.websocket.bytes.received";
+
+	/**
+	 * Counter of the bytes of the messages received over the WebSocket, once inflated. Compared to
+	 * {@link #WEB_SOCKET_BYTES_RECEIVED}, it measures the bandwidth saved by compression.
+	 */
+	String WEB_SOCKET_BYTES_INFLATED = "chat.websocket.bytes.inflated";
+
+	/**
+	 * Counter of WebSocket frames received.
+	 */
+	String EVENT_FRAMES = "chat.events.frames";
+
+	/**
+	 * Counter of chat events received for a room.
+	 */
+	String EVENTS_RECEIVED = "chat.events.received";
+
+	/**
+	 * Counter of chat events dropped for a room because they were already received.
+	 */
+	String EVENTS_DUPLICATE = "chat.events.duplicate";
+
+	/**
+	 * Counter of chat events shed for a room because it was flooded.
+	 */
+	String EVENTS_SHED = "chat.events.shed";
+
+	/**
+	 * Timer of the decoding of a WebSocket frame into events, including the retrieval of their users and messages.
+	 */
+	String EVENT_DECODE = "chat.events.decode";
+
+	/**
+	 * Timer of the lag between the time an event was raised by the server and the time it was received.
+	 */
+	String EVENT_LAG = "chat.events.lag";
+
+	/**
+	 * Timer of the execution of event listeners.
+	 */
+	String LISTENER_EXECUTION = "chat.listener.execution";
+
+	/**
+	 * Counter of event listeners that threw an exception.
+	 */
+	String LISTENER_FAILED = "chat.listener.failed";
+
+	/**
+	 * Gauge of the event listeners invocations that are submitted but not yet completed.
+	 */
+	String LISTENER_PENDING = "chat.listener.pending";
+
+	/**
+	 * Returns the counter having the given name, for the given host and room.
+	 * @param name Name of the counter.
+	 * @param host Host the counter relates to, can be <code>null</code>.
+	 * @param roomId Id of the room the counter relates to, or 0 for client-wide counters.
+	 * @return Counter.
+	 */
+	Counter counter(String name, ChatHost host, int roomId);
+
+	/**
+	 * Returns the timer having the given name, for the given host and room.
+	 * @param name Name of the timer.
+	 * @param host Host the timer relates to, can be <code>null</code>.
+	 * @param roomId Id of the room the timer relates to, or 0 for client-wide timers.
+	 * @return Timer.
+	 */
+	Timer timer(String name, ChatHost host, int roomId);
+
+	/**
+	 * Registers a gauge having the given name, for the given host and room. The value of the gauge is sampled by calling the
+	 * given supplier, which must be cheap and thread-safe.
+	 * @param name Name of the gauge.
+	 * @param host Host the gauge relates to, can be <code>null</code>.
+	 * @param roomId Id of the room the gauge relates to, or 0 for client-wide gauges.
+	 * @param value Supplier of the current value of the gauge.
+	 */
+	void gauge(String name, ChatHost host, int roomId, LongSupplier value);
+
+}
@@ -0,0 +1,22 @@
+package org.sobotics.chatexchange.chat.metrics;
+
+/**
+ * A monotonically increasing count, obtained through {@link ChatMetrics#counter(String, org.sobotics.chatexchange.chat.ChatHost, int)}.
+ * <p>Implementations must not allocate when incrementing.
+ */
+public interface Counter {
+
+	/**
+	 * Increments this counter by one.
+	 */
+	default void increment() {
+		increment(1);
+	}
+
+	/**
+	 * Increments this counter by the given amount.
+	 * @param amount Amount to add.
+	 */
+	void increment(long amount);
+
+}
@@ -0,0 +1,124 @@
+package org.sobotics.chatexchange.chat.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative <code>long</code> values (typically durations in nanoseconds).
+ * <p>Values are counted in log-linear buckets: every power of two is split into {@value #SUB_BUCKETS} linear sub-buckets,
+ * so that percentiles are reported with a relative error of at most 12.5%. Recording a value never allocates.
+ */
+public final class Histogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = bucketIndex(Long.MAX_VALUE) + 1;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records the given value. Negative values are recorded as 0.
+	 * @param value Value to record.
+	 */
+	public void record(long value) {
+		if (value < 0) value = 0;
+		buckets.incrementAndGet(bucketIndex(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long currentMax;
+		while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)) { }
+	}
+
+	/**
+	 * Returns the number of values recorded so far.
+	 * @return Number of recorded values.
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Returns the sum of all the values recorded so far.
+	 * @return Sum of the recorded values.
+	 */
+	public long getSum() {
+		return sum.get();
+	}
+
+	/**
+	 * Returns the highest value recorded so far, or 0 if nothing was recorded.
+	 * @return Highest recorded value.
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the mean of the values recorded so far, or 0 if nothing was recorded.
+	 * @return Mean of the recorded values.
+	 */
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : (double) sum.get() / n;
+	}
+
+	/**
+	 * Returns an estimate of the value at the given percentile. The returned value is the upper bound of the bucket
+	 * the percentile falls in, capped by the highest recorded value.
+	 * @param percentile Percentile to look for, between 0 and 100.
+	 * @return Value at the given percentile, or 0 if nothing was recorded.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = buckets.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) return 0;
+		long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(bucketUpperBound(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Clears all the values recorded so far. Values recorded concurrently with this call may or may not be kept.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS) return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) | subBucket;
+	}
+
+	static long bucketUpperBound(int index) {
+		if (index < SUB_BUCKETS) return index;
+		int shift = (index >>> SUB_BUCKET_BITS) - 1;
+		long lowerBound = (long) (SUB_BUCKETS | (index & (SUB_BUCKETS - 1))) << shift;
+		return lowerBound + (1L << shift) - 1;
+	}
+
+	@Override
+	public String toString() {
+		return "Histogram[count=" + getCount() + ", mean=" + getMean() + ", p50=" + getValueAtPercentile(50) + ", p99=" + getValueAtPercentile(99) + ", max=" + getMax() + "]";
+	}
+
+}
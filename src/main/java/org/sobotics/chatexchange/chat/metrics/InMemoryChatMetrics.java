@@ -0,0 +1,128 @@
+package org.sobotics.chatexchange.chat.metrics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.sobotics.chatexchange.chat.ChatHost;
+
+/**
+ * Metrics implementation keeping every meter in memory. Counters are backed by atomic longs and timers by {@link Histogram}s,
+ * so recording is lock-free and does not allocate.
+ * <p>The current values can be queried by meter, or exported all at once with {@link #getCounters()}, {@link #getTimers()}
+ * and {@link #getGauges()}.
+ */
+public final class InMemoryChatMetrics implements ChatMetrics {
+
+	private final ConcurrentMap<MeterId, AtomicCounter> counters = new ConcurrentHashMap<>();
+	private final ConcurrentMap<MeterId, HistogramTimer> timers = new ConcurrentHashMap<>();
+	private final ConcurrentMap<MeterId, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+	@Override
+	public Counter counter(String name, ChatHost host, int roomId) {
+		return counters.computeIfAbsent(new MeterId(name, host, roomId), id -> new AtomicCounter());
+	}
+
+	@Override
+	public Timer timer(String name, ChatHost host, int roomId) {
+		return timers.computeIfAbsent(new MeterId(name, host, roomId), id -> new HistogramTimer());
+	}
+
+	@Override
+	public void gauge(String name, ChatHost host, int roomId, LongSupplier value) {
+		gauges.put(new MeterId(name, host, roomId), value);
+	}
+
+	/**
+	 * Returns the current value of the given counter.
+	 * @param name Name of the counter.
+	 * @param host Host of the counter.
+	 * @param roomId Room id of the counter.
+	 * @return Value of the counter, or 0 if it was never registered.
+	 */
+	public long getCount(String name, ChatHost host, int roomId) {
+		AtomicCounter counter = counters.get(new MeterId(name, host, roomId));
+		return counter == null ? 0 : counter.value.get();
+	}
+
+	/**
+	 * Returns the histogram backing the given timer. The returned histogram is live: it keeps being updated.
+	 * @param name Name of the timer.
+	 * @param host Host of the timer.
+	 * @param roomId Room id of the timer.
+	 * @return Histogram of the timer, in nanoseconds, or <code>null</code> if it was never registered.
+	 */
+	public Histogram getTimer(String name, ChatHost host, int roomId) {
+		HistogramTimer timer = timers.get(new MeterId(name, host, roomId));
+		return timer == null ? null : timer.histogram;
+	}
+
+	/**
+	 * Samples the current value of the given gauge.
+	 * @param name Name of the gauge.
+	 * @param host Host of the gauge.
+	 * @param roomId Room id of the gauge.
+	 * @return Value of the gauge, or 0 if it was never registered.
+	 */
+	public long getGauge(String name, ChatHost host, int roomId) {
+		LongSupplier gauge = gauges.get(new MeterId(name, host, roomId));
+		return gauge == null ? 0 : gauge.getAsLong();
+	}
+
+	/**
+	 * Returns the current value of all the registered counters.
+	 * @return Unmodifiable map of each counter to its value.
+	 */
+	public Map<MeterId, Long> getCounters() {
+		Map<MeterId, Long> result = new HashMap<>();
+		counters.forEach((id, counter) -> result.put(id, counter.value.get()));
+		return Collections.unmodifiableMap(result);
+	}
+
+	/**
+	 * Returns the histograms of all the registered timers. The returned histograms are live: they keep being updated.
+	 * @return Unmodifiable map of each timer to its histogram, in nanoseconds.
+	 */
+	public Map<MeterId, Histogram> getTimers() {
+		Map<MeterId, Histogram> result = new HashMap<>();
+		timers.forEach((id, timer) -> result.put(id, timer.histogram));
+		return Collections.unmodifiableMap(result);
+	}
+
+	/**
+	 * Samples the current value of all the registered gauges.
+	 * @return Unmodifiable map of each gauge to its value.
+	 */
+	public Map<MeterId, Long> getGauges() {
+		Map<MeterId, Long> result = new HashMap<>();
+		gauges.forEach((id, gauge) -> result.put(id, gauge.getAsLong()));
+		return Collections.unmodifiableMap(result);
+	}
+
+	private static final class AtomicCounter implements Counter {
+
+		private final AtomicLong value = new AtomicLong();
+
+		@Override
+		public void increment(long amount) {
+			value.addAndGet(amount);
+		}
+
+	}
+
+	private static final class HistogramTimer implements Timer {
+
+		private final Histogram histogram = new Histogram();
+
+		@Override
+		public void record(long nanos) {
+			histogram.record(nanos);
+		}
+
+	}
+
+}
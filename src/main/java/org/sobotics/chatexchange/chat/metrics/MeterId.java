@@ -0,0 +1,64 @@
+package org.sobotics.chatexchange.chat.metrics;
+
+import java.util.Objects;
+
+import org.sobotics.chatexchange.chat.ChatHost;
+
+/**
+ * Identifies a meter registered in an {@link InMemoryChatMetrics}: its name, host and room id.
+ */
+public final class MeterId {
+
+	private final String name;
+	private final ChatHost host;
+	private final int roomId;
+
+	MeterId(String name, ChatHost host, int roomId) {
+		this.name = Objects.requireNonNull(name, "name");
+		this.host = host;
+		this.roomId = roomId;
+	}
+
+	/**
+	 * Returns the name of the meter.
+	 * @return Name of the meter.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the host the meter relates to. This can be <code>null</code> for meters unrelated to a chat host.
+	 * @return Host of the meter.
+	 */
+	public ChatHost getHost() {
+		return host;
+	}
+
+	/**
+	 * Returns the id of the room the meter relates to, or 0 for client-wide meters.
+	 * @return Id of the room of the meter.
+	 */
+	public int getRoomId() {
+		return roomId;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) return true;
+		if (!(obj instanceof MeterId)) return false;
+		MeterId other = (MeterId) obj;
+		return roomId == other.roomId && host == other.host && name.equals(other.name);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(name, host, roomId);
+	}
+
+	@Override
+	public String toString() {
+		return name + "{host=" + (host == null ? "" : host.getName()) + ", room=" + roomId + "}";
+	}
+
+}
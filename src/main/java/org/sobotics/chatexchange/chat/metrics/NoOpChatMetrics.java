@@ -0,0 +1,32 @@
+package org.sobotics.chatexchange.chat.metrics;
+
+import java.util.function.LongSupplier;
+
+import org.sobotics.chatexchange.chat.ChatHost;
+
+/**
+ * Metrics implementation discarding everything. This is the default used by the client.
+ */
+final class NoOpChatMetrics implements ChatMetrics {
+
+	static final NoOpChatMetrics INSTANCE = new NoOpChatMetrics();
+
+	private static final Counter COUNTER = amount -> { };
+	private static final Timer TIMER = nanos -> { };
+
+	private NoOpChatMetrics() { }
+
+	@Override
+	public Counter counter(String name, ChatHost host, int roomId) {
+		return COUNTER;
+	}
+
+	@Override
+	public Timer timer(String name, ChatHost host, int roomId) {
+		return TIMER;
+	}
+
+	@Override
+	public void gauge(String name, ChatHost host, int roomId, LongSupplier value) { }
+
+}
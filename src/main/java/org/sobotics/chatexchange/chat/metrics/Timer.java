@@ -0,0 +1,23 @@
+package org.sobotics.chatexchange.chat.metrics;
+
+/**
+ * A distribution of durations, obtained through {@link ChatMetrics#timer(String, org.sobotics.chatexchange.chat.ChatHost, int)}.
+ * <p>Implementations must not allocate when recording.
+ */
+public interface Timer {
+
+	/**
+	 * Records the given duration.
+	 * @param nanos Duration to record, in nanoseconds.
+	 */
+	void record(long nanos);
+
+	/**
+	 * Records the time elapsed since the given start time.
+	 * @param startNanos Start time, as returned by {@link System#nanoTime()}.
+	 */
+	default void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+}
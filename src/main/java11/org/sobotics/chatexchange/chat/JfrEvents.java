@@ -0,0 +1,241 @@
+package org.sobotics.chatexchange.chat;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Hooks emitting JDK Flight Recorder events for the chat operations.
+ * <p>This is the Java 11 version of this class, part of the multi-release jar. It must keep the same methods as the Java 8
+ * version, under <code>src/main/java</code>.
+ * <p>Each <code>begin</code> method returns <code>null</code> when the corresponding event is disabled in the current
+ * recording, so that a disabled event costs a single check and no allocation.
+ */
+final class JfrEvents {
+
+	private static final EventType HTTP_CALL = EventType.getEventType(HttpCallEvent.class);
+	private static final EventType THROTTLE_WAIT = EventType.getEventType(ThrottleWaitEvent.class);
+	private static final EventType WEB_SOCKET_FRAME = EventType.getEventType(WebSocketFrameEvent.class);
+	private static final EventType WEB_SOCKET_RECONNECT = EventType.getEventType(WebSocketReconnectEvent.class);
+	private static final EventType LISTENER = EventType.getEventType(ListenerEvent.class);
+
+	private JfrEvents() { }
+
+	static Object beginHttpCall() {
+		if (!HTTP_CALL.isEnabled()) return null;
+		HttpCallEvent event = new HttpCallEvent();
+		event.begin();
+		return event;
+	}
+
+	static void endHttpCall(Object token, String method, String url, int status, long bytes) {
+		if (token == null) return;
+		HttpCallEvent event = (HttpCallEvent) token;
+		event.end();
+		if (event.shouldCommit()) {
+			event.method = method;
+			event.endpoint = Endpoint.of(url).getKey();
+			event.url = url;
+			event.status = status;
+			event.bytes = bytes;
+			event.commit();
+		}
+	}
+
+	static Object beginThrottleWait() {
+		if (!THROTTLE_WAIT.isEnabled()) return null;
+		ThrottleWaitEvent event = new ThrottleWaitEvent();
+		event.begin();
+		return event;
+	}
+
+	static void endThrottleWait(Object token, ChatHost host, int roomId, String url, long throttleSeconds) {
+		if (token == null) return;
+		ThrottleWaitEvent event = (ThrottleWaitEvent) token;
+		event.end();
+		if (event.shouldCommit()) {
+			event.host = host.getName();
+			event.roomId = roomId;
+			event.endpoint = Endpoint.of(url).getKey();
+			event.throttle = throttleSeconds;
+			event.commit();
+		}
+	}
+
+	static Object beginWebSocketFrame() {
+		if (!WEB_SOCKET_FRAME.isEnabled()) return null;
+		WebSocketFrameEvent event = new WebSocketFrameEvent();
+		event.begin();
+		return event;
+	}
+
+	static void endWebSocketFrame(Object token, ChatHost host, int roomId, int size, int rooms, int events) {
+		if (token == null) return;
+		WebSocketFrameEvent event = (WebSocketFrameEvent) token;
+		event.end();
+		if (event.shouldCommit()) {
+			event.host = host.getName();
+			event.roomId = roomId;
+			event.size = size;
+			event.rooms = rooms;
+			event.events = events;
+			event.commit();
+		}
+	}
+
+	static Object beginWebSocketReconnect() {
+		if (!WEB_SOCKET_RECONNECT.isEnabled()) return null;
+		WebSocketReconnectEvent event = new WebSocketReconnectEvent();
+		event.begin();
+		return event;
+	}
+
+	static void endWebSocketReconnect(Object token, ChatHost host, int roomId, long inactivitySeconds) {
+		if (token == null) return;
+		WebSocketReconnectEvent event = (WebSocketReconnectEvent) token;
+		event.end();
+		if (event.shouldCommit()) {
+			event.host = host.getName();
+			event.roomId = roomId;
+			event.inactivity = inactivitySeconds;
+			event.commit();
+		}
+	}
+
+	static Object beginListener() {
+		if (!LISTENER.isEnabled()) return null;
+		ListenerEvent event = new ListenerEvent();
+		event.begin();
+		return event;
+	}
+
+	static void endListener(Object token, ChatHost host, int roomId, Object chatEvent, Object listener) {
+		if (token == null) return;
+		ListenerEvent event = (ListenerEvent) token;
+		event.end();
+		if (event.shouldCommit()) {
+			event.host = host.getName();
+			event.roomId = roomId;
+			event.eventType = chatEvent.getClass().getSimpleName();
+			event.listener = listener.getClass().getName();
+			event.commit();
+		}
+	}
+
+	@Name("org.sobotics.chatexchange.HttpCall")
+	@Label("Chat HTTP Call")
+	@Category({ "ChatExchange", "HTTP" })
+	@Description("HTTP request made to a chat server or a Stack Exchange site")
+	static final class HttpCallEvent extends Event {
+
+		@Label("Method")
+		String method;
+
+		@Label("Endpoint")
+		String endpoint;
+
+		@Label("URL")
+		String url;
+
+		@Label("Status")
+		@Description("HTTP status code of the response, or -1 if no response was received")
+		int status;
+
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+
+	}
+
+	@Name("org.sobotics.chatexchange.ThrottleWait")
+	@Label("Chat Throttle Wait")
+	@Category({ "ChatExchange", "HTTP" })
+	@Description("Wait before retrying a chat operation that was throttled by the server")
+	static final class ThrottleWaitEvent extends Event {
+
+		@Label("Host")
+		String host;
+
+		@Label("Room Id")
+		int roomId;
+
+		@Label("Endpoint")
+		String endpoint;
+
+		@Label("Throttle")
+		@Description("Time the server asked to wait")
+		@Timespan(Timespan.SECONDS)
+		long throttle;
+
+	}
+
+	@Name("org.sobotics.chatexchange.WebSocketFrame")
+	@Label("Chat WebSocket Frame")
+	@Category({ "ChatExchange", "WebSocket" })
+	@Description("Processing of a frame received on the chat WebSocket of a room")
+	static final class WebSocketFrameEvent extends Event {
+
+		@Label("Host")
+		String host;
+
+		@Label("Room Id")
+		int roomId;
+
+		@Label("Size")
+		@Description("Number of characters of the frame")
+		int size;
+
+		@Label("Rooms")
+		@Description("Number of rooms the frame holds events for")
+		int rooms;
+
+		@Label("Events")
+		@Description("Number of events decoded for the room")
+		int events;
+
+	}
+
+	@Name("org.sobotics.chatexchange.WebSocketReconnect")
+	@Label("Chat WebSocket Reconnect")
+	@Category({ "ChatExchange", "WebSocket" })
+	@Description("Restart of the chat WebSocket of a room after a period of inactivity")
+	static final class WebSocketReconnectEvent extends Event {
+
+		@Label("Host")
+		String host;
+
+		@Label("Room Id")
+		int roomId;
+
+		@Label("Inactivity")
+		@Timespan(Timespan.SECONDS)
+		long inactivity;
+
+	}
+
+	@Name("org.sobotics.chatexchange.Listener")
+	@Label("Chat Event Listener")
+	@Category({ "ChatExchange", "Events" })
+	@Description("Invocation of a listener for a chat event")
+	static final class ListenerEvent extends Event {
+
+		@Label("Host")
+		String host;
+
+		@Label("Room Id")
+		int roomId;
+
+		@Label("Event Type")
+		String eventType;
+
+		@Label("Listener")
+		String listener;
+
+	}
+
+}
@@ -0,0 +1,23 @@
+package org.sobotics.chatexchange.chat;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the executors running on virtual threads, see {@link ThreadMode#VIRTUAL}.
+ * <p>This is the Java 21 version of this class, packaged in the multi-release jar. The Java 8 version, under
+ * <code>src/main/java</code>, must keep the same methods.
+ */
+final class Threads {
+
+	private Threads() { }
+
+	static boolean supportsVirtualThreads() {
+		return true;
+	}
+
+	static ExecutorService newVirtualThreadPerTaskExecutor(String name) {
+		return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+	}
+
+}
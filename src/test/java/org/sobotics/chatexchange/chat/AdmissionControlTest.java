@@ -0,0 +1,128 @@
+package org.sobotics.chatexchange.chat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+
+public class AdmissionControlTest {
+
+	private final List<LoadShedding> reports = new ArrayList<>();
+
+	@Test
+	public void admitsEventsNotAboutMessages() {
+		AdmissionControl admission = new AdmissionControl(new FloodControl(1, 1, ShedPolicy.DROP), 1);
+		long now = System.nanoTime();
+		for (int i = 0; i < 10; i++) {
+			assertTrue(admission.admit(event(3, 7, 0), now, reports::add));
+		}
+		assertEquals(Collections.emptyList(), reports);
+	}
+
+	@Test
+	public void shedsEventsOverUserLimit() {
+		AdmissionControl admission = new AdmissionControl(new FloodControl(2, 100, ShedPolicy.DROP), 1);
+		long now = System.nanoTime();
+		assertTrue(admission.admit(event(1, 7, 101), now, reports::add));
+		assertTrue(admission.admit(event(2, 7, 101), now, reports::add));
+		assertFalse(admission.admit(event(1, 7, 102), now, reports::add));
+		// the other users are not limited by this one
+		assertTrue(admission.admit(event(1, 8, 103), now, reports::add));
+		assertEquals(1, reports.size());
+		LoadShedding report = reports.get(0);
+		assertTrue(report.isActive());
+		assertEquals(1, report.getShedEvents());
+		assertEquals(Collections.singletonMap(7L, 1), report.getShedEventsByUser());
+		assertEquals(Collections.emptyList(), report.getShedMessageIds());
+	}
+
+	@Test
+	public void shedsEventsOverRoomLimit() {
+		AdmissionControl admission = new AdmissionControl(new FloodControl(100, 3, ShedPolicy.DROP), 1);
+		long now = System.nanoTime();
+		for (long user = 1; user <= 3; user++) {
+			assertTrue(admission.admit(event(1, user, 100 + user), now, reports::add));
+		}
+		assertFalse(admission.admit(event(1, 4, 104), now, reports::add));
+	}
+
+	@Test
+	public void keepsUserTokenWhenRoomSheds() {
+		AdmissionControl admission = new AdmissionControl(new FloodControl(1, 4, ShedPolicy.DROP), 1);
+		long now = System.nanoTime();
+		for (long user = 1; user <= 4; user++) {
+			assertTrue(admission.admit(event(1, user, 100 + user), now, reports::add));
+		}
+		assertFalse(admission.admit(event(1, 5, 105), now, reports::add));
+		// one token is back in the room after 15 seconds, and user 5 still has the token of the event that was shed
+		assertTrue(admission.admit(event(1, 5, 106), now + TimeUnit.SECONDS.toNanos(15), reports::add));
+	}
+
+	@Test
+	public void refillsBuckets() {
+		AdmissionControl admission = new AdmissionControl(new FloodControl(2, 100, ShedPolicy.DROP), 1);
+		long now = System.nanoTime();
+		assertTrue(admission.admit(event(1, 7, 101), now, reports::add));
+		assertTrue(admission.admit(event(1, 7, 102), now, reports::add));
+		assertFalse(admission.admit(event(1, 7, 103), now, reports::add));
+		// 2 events per minute: one token is back after 30 seconds
+		long later = now + TimeUnit.SECONDS.toNanos(30);
+		assertTrue(admission.admit(event(1, 7, 104), later, reports::add));
+		assertFalse(admission.admit(event(1, 7, 105), later, reports::add));
+	}
+
+	@Test
+	public void summarizesShedMessages() {
+		AdmissionControl admission = new AdmissionControl(new FloodControl(1, 100, ShedPolicy.SUMMARIZE), 1);
+		long now = System.nanoTime();
+		assertTrue(admission.admit(event(1, 7, 101), now, reports::add));
+		assertFalse(admission.admit(event(1, 7, 102), now, reports::add));
+		assertFalse(admission.admit(event(1, 7, 103), now, reports::add));
+		assertFalse(admission.admit(event(1, 7, 104), now, reports::add));
+		assertEquals(Collections.singletonList(102L), reports.get(0).getShedMessageIds());
+
+		// still shedding: the events shed since the last report are reported
+		admission.tick(now + TimeUnit.SECONDS.toNanos(5), reports::add);
+		assertEquals(2, reports.size());
+		assertTrue(reports.get(1).isActive());
+		assertEquals(Arrays.asList(103L, 104L), reports.get(1).getShedMessageIds());
+
+		// nothing shed for 10 seconds: the shedding is over
+		admission.tick(now + TimeUnit.SECONDS.toNanos(10), reports::add);
+		assertEquals(3, reports.size());
+		assertFalse(reports.get(2).isActive());
+		assertEquals(0, reports.get(2).getShedEvents());
+		admission.tick(now + TimeUnit.SECONDS.toNanos(20), reports::add);
+		assertEquals(3, reports.size());
+	}
+
+	@Test
+	public void samplesShedEvents() {
+		AdmissionControl admission = new AdmissionControl(new FloodControl(1, 100, ShedPolicy.SAMPLE), 1);
+		long now = System.nanoTime();
+		int admitted = 0;
+		for (int i = 0; i < 101; i++) {
+			if (admission.admit(event(1, 7, 100 + i), now, reports::add)) admitted++;
+		}
+		// the first event takes the only token, then one in 10 of the events over the limit is let through
+		assertEquals(11, admitted);
+	}
+
+	private static JsonObject event(int eventType, long userId, long messageId) {
+		JsonObject event = new JsonObject();
+		event.addProperty("event_type", eventType);
+		event.addProperty("user_id", userId);
+		if (messageId != 0) event.addProperty("message_id", messageId);
+		return event;
+	}
+
+}
@@ -0,0 +1,118 @@
+package org.sobotics.chatexchange.chat;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class LongHashTableTest {
+
+	@Test
+	public void addsAndRemoves() {
+		LongHashTable table = new LongHashTable(4);
+		assertTrue(table.add(42));
+		assertFalse(table.add(42));
+		assertTrue(table.contains(42));
+		assertEquals(1, table.size());
+		assertTrue(table.remove(42));
+		assertFalse(table.remove(42));
+		assertFalse(table.contains(42));
+		assertEquals(0, table.size());
+	}
+
+	@Test
+	public void tracksZero() {
+		LongHashTable table = new LongHashTable(4);
+		assertFalse(table.contains(0));
+		assertTrue(table.add(0));
+		assertFalse(table.add(0));
+		assertTrue(table.contains(0));
+		assertArrayEquals(new long[] { 0 }, table.toArray());
+		assertTrue(table.remove(0));
+		assertEquals(0, table.size());
+	}
+
+	@Test
+	public void keepsCollidingKeysReachableAfterRemoval() {
+		// keys colliding on the same slot form one probe run: removing from its middle must shift the rest back
+		assertShiftsBack(collidingKeys(6, 0));
+	}
+
+	@Test
+	public void keepsCollidingKeysReachableAfterRemovalAcrossTableEnd() {
+		assertShiftsBack(collidingKeys(6, 14));
+	}
+
+	private static void assertShiftsBack(long[] keys) {
+		LongHashTable table = new LongHashTable(4);
+		for (long key : keys) {
+			table.add(key);
+		}
+		table.remove(keys[1]);
+		table.remove(keys[3]);
+		for (int i = 0; i < keys.length; i++) {
+			assertEquals("key " + i, i != 1 && i != 3, table.contains(keys[i]));
+		}
+		long[] remaining = table.toArray();
+		Arrays.sort(remaining);
+		long[] expected = { keys[0], keys[2], keys[4], keys[5] };
+		Arrays.sort(expected);
+		assertArrayEquals(expected, remaining);
+	}
+
+	@Test
+	public void matchesHashSet() {
+		Random random = new Random(1);
+		LongHashTable table = new LongHashTable(16);
+		Set<Long> expected = new HashSet<>();
+		for (int i = 0; i < 100_000; i++) {
+			// a small key space, so that keys are often removed and added again
+			long key = random.nextInt(2_000) - 1_000;
+			if (random.nextBoolean()) {
+				assertEquals(expected.add(key), table.add(key));
+			} else {
+				assertEquals(expected.remove(key), table.remove(key));
+			}
+			assertEquals(expected.size(), table.size());
+		}
+		for (long key = -1_000; key < 1_000; key++) {
+			assertEquals(expected.contains(key), table.contains(key));
+		}
+	}
+
+	@Test
+	public void clears() {
+		LongHashTable table = new LongHashTable(4);
+		for (long key = 0; key < 100; key++) {
+			table.add(key);
+		}
+		table.clear();
+		assertEquals(0, table.size());
+		assertEquals(0, table.toArray().length);
+		assertFalse(table.contains(0));
+		assertFalse(table.contains(50));
+	}
+
+	/**
+	 * Returns keys that all have the given ideal slot in a table of the minimum capacity.
+	 */
+	private static long[] collidingKeys(int count, int slot) {
+		long[] keys = new long[count];
+		int found = 0;
+		for (long key = 1; found < count; key++) {
+			long hash = key * 0x9E3779B97F4A7C15L;
+			if (((int) (hash ^ (hash >>> 32)) & 15) == slot) {
+				keys[found++] = key;
+			}
+		}
+		return keys;
+	}
+
+}
@@ -0,0 +1,94 @@
+package org.sobotics.chatexchange.chat;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time taken by {@link MessageSplitter} on multi-kilobyte messages. It is not run with the tests: run it with
+ * <code>java -cp target/classes:target/test-classes org.sobotics.chatexchange.chat.MessageSplitterBenchmark</code>.
+ * <p>Splitting must stay linear in the length of the message: doubling the size of an input should roughly double its time.
+ */
+public final class MessageSplitterBenchmark {
+
+	private static final int MAX_PART_LENGTH = 500;
+	private static final int WARMUP_ROUNDS = 20;
+	private static final int ROUNDS = 50;
+
+	private MessageSplitterBenchmark() { }
+
+	public static void main(String[] args) {
+		for (int kilobytes : new int[] { 50, 100, 200 }) {
+			int length = kilobytes * 1024;
+			run("prose with links and code, " + kilobytes + " KB", prose(length));
+			run("unclosed brackets and backticks, " + kilobytes + " KB", unclosed(length));
+			run("fixed-font block, " + kilobytes + " KB", fixedFont(length));
+		}
+	}
+
+	private static void run(String name, String message) {
+		int parts = 0;
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			parts += split(message).size();
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++) {
+			parts += split(message).size();
+		}
+		long nanos = (System.nanoTime() - start) / ROUNDS;
+		System.out.printf("%-45s %8.3f ms (%d parts)%n", name, nanos / (double) TimeUnit.MILLISECONDS.toNanos(1), parts / (WARMUP_ROUNDS + ROUNDS));
+	}
+
+	private static List<String> split(String message) {
+		return MessageSplitter.split(message, MAX_PART_LENGTH);
+	}
+
+	/**
+	 * Words, with some markdown links and inline code, and a line break now and then.
+	 */
+	private static String prose(int length) {
+		Random random = new Random(1);
+		StringBuilder message = new StringBuilder(length + 100);
+		while (message.length() < length) {
+			int kind = random.nextInt(20);
+			if (kind == 0) {
+				message.append("[a link to a question](https://stackoverflow.com/q/").append(random.nextInt(1_000_000)).append(')');
+			} else if (kind == 1) {
+				message.append("`some.inline(code)`");
+			} else {
+				message.append("word").append(random.nextInt(100));
+			}
+			message.append(random.nextInt(30) == 0 ? '\n' : ' ');
+		}
+		return message.toString();
+	}
+
+	/**
+	 * Unclosed brackets and backticks with no possible break, the worst case of a tokenizer looking for closing characters.
+	 */
+	private static String unclosed(int length) {
+		StringBuilder message = new StringBuilder(length + 2);
+		while (message.length() < length) {
+			message.append("[`");
+		}
+		return message.toString();
+	}
+
+	/**
+	 * Lines indented by 4 spaces, some of them longer than a part.
+	 */
+	private static String fixedFont(int length) {
+		Random random = new Random(1);
+		StringBuilder message = new StringBuilder(length + 1000);
+		while (message.length() < length) {
+			message.append("    ");
+			int lineLength = random.nextInt(10) == 0 ? 800 : 60;
+			for (int i = 0; i < lineLength; i++) {
+				message.append((char) ('a' + random.nextInt(26)));
+			}
+			message.append('\n');
+		}
+		return message.toString();
+	}
+
+}
@@ -0,0 +1,113 @@
+package org.sobotics.chatexchange.chat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MessageSplitterTest {
+
+	@Test
+	public void keepsShortMessage() {
+		assertEquals(Collections.singletonList("hello world"), MessageSplitter.split("hello world", 500));
+	}
+
+	@Test
+	public void splitsAtLastSpace() {
+		assertEquals(Arrays.asList("aaa bbb", "ccc ddd"), MessageSplitter.split("aaa bbb ccc ddd", 10));
+	}
+
+	@Test
+	public void prefersLineBreakOverSpace() {
+		// the space at index 15 is closer to the limit, but the line break wins
+		assertEquals(Arrays.asList("aaa bbb ccc", "ddd eee fff"), MessageSplitter.split("aaa bbb ccc\nddd eee fff", 15));
+	}
+
+	@Test
+	public void skipsBlankParts() {
+		assertEquals(Arrays.asList("aaaa", "bbbb"), MessageSplitter.split("aaaa\n\n\n\nbbbb", 4));
+	}
+
+	@Test
+	public void neverBreaksLink() {
+		String link = "[some link text](https://example.com/path)";
+		List<String> parts = MessageSplitter.split("intro " + link + " outro", 50);
+		assertEquals(Arrays.asList("intro " + link, "outro"), parts);
+	}
+
+	@Test
+	public void neverBreaksInlineCode() {
+		String code = "`code with some spaces`";
+		assertEquals(Arrays.asList("text", code, "end"), MessageSplitter.split("text " + code + " end", 25));
+	}
+
+	@Test
+	public void cutsBeforeLinkWhenThereIsNoBreak() {
+		String link = "[ab](http://e.com)";
+		List<String> parts = MessageSplitter.split("xxxxxxxxxx" + link + "yyyy", 20);
+		assertEquals(Arrays.asList("xxxxxxxxxx", link + "yy", "yy"), parts);
+	}
+
+	@Test(expected = ChatOperationException.class)
+	public void rejectsLinkLongerThanPart() {
+		MessageSplitter.split("intro [some link text](https://example.com/path) outro", 20);
+	}
+
+	@Test
+	public void hardCutKeepsEveryCharacter() {
+		String message = repeat('a', 25);
+		List<String> parts = MessageSplitter.split(message, 10);
+		assertEquals(Arrays.asList(repeat('a', 10), repeat('a', 10), repeat('a', 5)), parts);
+	}
+
+	@Test
+	public void hardCutNeverSplitsSurrogatePair() {
+		String emoji = "\uD83D\uDE00";
+		List<String> parts = MessageSplitter.split(repeat('a', 9) + emoji + "bbbb", 10);
+		assertEquals(Arrays.asList(repeat('a', 9), emoji + "bbbb"), parts);
+	}
+
+	@Test
+	public void neverSplitsFixedFontAtSpaces() {
+		List<String> parts = MessageSplitter.split("    a b\n    c d e f g h", 12);
+		assertEquals(Arrays.asList("    a b", "    c d e f ", "    g h"), parts);
+	}
+
+	@Test
+	public void reindentsCutFixedFontLine() {
+		String message = "    short\n    " + repeat('x', 20);
+		List<String> parts = MessageSplitter.split(message, 12);
+		assertEquals(Arrays.asList("    short", "    " + repeat('x', 8), "    " + repeat('x', 8), "    " + repeat('x', 4)), parts);
+		for (String part : parts) {
+			assertTrue(part, part.length() <= 12 && part.startsWith("    "));
+		}
+	}
+
+	@Test(expected = ChatOperationException.class)
+	public void rejectsPartsTooShortForFixedFont() {
+		MessageSplitter.split("    aaaa\n    bbbb", 4);
+	}
+
+	@Test(timeout = 10_000)
+	public void splitsPathologicalMessageInLinearTime() {
+		// unclosed brackets and backticks, with no possible break: each of them used to be looked up again at every part
+		StringBuilder message = new StringBuilder();
+		while (message.length() < 100_000) {
+			message.append("[`");
+		}
+		List<String> parts = MessageSplitter.split(message.toString(), 500);
+		assertEquals(200, parts.size());
+		assertEquals(message.toString(), String.join("", parts));
+	}
+
+	static String repeat(char c, int count) {
+		char[] chars = new char[count];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+
+}
@@ -0,0 +1,66 @@
+package org.sobotics.chatexchange.chat;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RoomCheckpointTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void roundTrips() throws IOException {
+		Path file = RoomCheckpoint.file(folder.getRoot().toPath(), ChatHost.STACK_OVERFLOW, 139);
+		RoomCheckpoint checkpoint = new RoomCheckpoint(ChatHost.STACK_OVERFLOW, 139, 1_500_000_000_000L, 123_456_789L, 987_654L,
+				1_499_999_999_000L, new long[] { 1, 2, 3 }, new long[] { 2, -1 }, new long[0]);
+		checkpoint.write(file);
+		RoomCheckpoint read = RoomCheckpoint.read(file);
+		assertEquals(ChatHost.STACK_OVERFLOW, read.host);
+		assertEquals(139, read.roomId);
+		assertEquals(1_500_000_000_000L, read.savedAtMillis);
+		assertEquals(123_456_789L, read.eventCursor);
+		assertEquals(987_654L, read.lastEventId);
+		assertEquals(1_499_999_999_000L, read.pingableSyncedAtMillis);
+		assertArrayEquals(new long[] { 1, 2, 3 }, read.currentUserIds);
+		assertArrayEquals(new long[] { 2, -1 }, read.pingableUserIds);
+		assertArrayEquals(new long[0], read.deletedMessageIds);
+	}
+
+	@Test
+	public void replacesPreviousCheckpoint() throws IOException {
+		Path file = RoomCheckpoint.file(folder.getRoot().toPath(), ChatHost.STACK_EXCHANGE, 1);
+		new RoomCheckpoint(ChatHost.STACK_EXCHANGE, 1, 1, 1, 1, 1, new long[] { 1 }, new long[0], new long[0]).write(file);
+		new RoomCheckpoint(ChatHost.STACK_EXCHANGE, 1, 2, 2, 2, 2, new long[0], new long[0], new long[] { 5 }).write(file);
+		RoomCheckpoint read = RoomCheckpoint.read(file);
+		assertEquals(2, read.lastEventId);
+		assertArrayEquals(new long[0], read.currentUserIds);
+		assertArrayEquals(new long[] { 5 }, read.deletedMessageIds);
+		// only the checkpoint is left, no temporary file
+		try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+			assertEquals(1, files.count());
+		}
+	}
+
+	@Test
+	public void readsMissingFileAsNull() throws IOException {
+		assertNull(RoomCheckpoint.read(folder.getRoot().toPath().resolve("missing.checkpoint")));
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsOtherFiles() throws IOException {
+		Path file = folder.newFile("other.checkpoint").toPath();
+		Files.write(file, "not a checkpoint".getBytes("UTF-8"));
+		RoomCheckpoint.read(file);
+	}
+
+}
@@ -0,0 +1,81 @@
+package org.sobotics.chatexchange.chat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+import org.sobotics.chatexchange.chat.TriggerRouter.Kind;
+
+public class TriggerRouterTest {
+
+	private final TriggerRouter<String> router = new TriggerRouter<>();
+	private final Consumer<String> first = text -> { };
+	private final Consumer<String> second = text -> { };
+	private final Consumer<String> third = text -> { };
+
+	@Test
+	public void matchesCommandAtStartIgnoringCaseAndWhitespace() {
+		router.add(Kind.COMMAND, "!!help", first);
+		assertEquals(Collections.singletonList(first), router.route("  !!HELP me"));
+		assertEquals(Collections.emptyList(), router.route("say !!help"));
+	}
+
+	@Test
+	public void matchesKeywordAsWholeWord() {
+		router.add(Kind.KEYWORD, "spam", first);
+		assertEquals(Collections.singletonList(first), router.route("This is SPAM."));
+		assertEquals(Collections.emptyList(), router.route("spammer"));
+		assertEquals(Collections.emptyList(), router.route("antispam"));
+	}
+
+	@Test
+	public void matchesLiteralAnywhere() {
+		router.add(Kind.LITERAL, "spam", first);
+		assertEquals(Collections.singletonList(first), router.route("antispammer"));
+	}
+
+	@Test
+	public void matchesOverlappingPatterns() {
+		router.add(Kind.LITERAL, "hers", first);
+		router.add(Kind.LITERAL, "she", second);
+		router.add(Kind.LITERAL, "he", third);
+		assertEquals(Arrays.asList(first, second, third), router.route("ushers"));
+		assertEquals(Arrays.asList(second, third), router.route("ushe"));
+	}
+
+	@Test
+	public void keywordMatchesLaterOccurrenceAsWord() {
+		router.add(Kind.KEYWORD, "cat", first);
+		assertEquals(Collections.singletonList(first), router.route("concatenate the cat"));
+	}
+
+	@Test
+	public void returnsHandlerOnce() {
+		router.add(Kind.COMMAND, "foo", first);
+		router.add(Kind.KEYWORD, "foo", first);
+		router.add(Kind.LITERAL, "bar", first);
+		assertEquals(Collections.singletonList(first), router.route("foo bar foo"));
+	}
+
+	@Test
+	public void picksUpTriggersAddedAfterRouting() {
+		assertTrue(router.isEmpty());
+		router.add(Kind.LITERAL, "foo", first);
+		assertEquals(Collections.emptyList(), router.route("bar"));
+		router.add(Kind.LITERAL, "bar", second);
+		assertFalse(router.isEmpty());
+		assertEquals(Collections.singletonList(second), router.route("bar"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsEmptyPattern() {
+		router.add(Kind.LITERAL, "", first);
+	}
+
+}
@@ -0,0 +1,76 @@
+package org.sobotics.chatexchange.chat.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+	@Test
+	public void countsSmallValuesExactly() {
+		for (int value = 0; value < 8; value++) {
+			assertEquals(value, Histogram.bucketIndex(value));
+			assertEquals(value, Histogram.bucketUpperBound(value));
+		}
+	}
+
+	@Test
+	public void bucketsAreContiguous() {
+		for (int index = 1; index <= Histogram.bucketIndex(Long.MAX_VALUE); index++) {
+			long lowerBound = Histogram.bucketUpperBound(index - 1) + 1;
+			assertEquals("lower bound of bucket " + index, index, Histogram.bucketIndex(lowerBound));
+			assertEquals("upper bound of bucket " + index, index, Histogram.bucketIndex(Histogram.bucketUpperBound(index)));
+		}
+		assertEquals(Long.MAX_VALUE, Histogram.bucketUpperBound(Histogram.bucketIndex(Long.MAX_VALUE)));
+	}
+
+	@Test
+	public void boundsRelativeError() {
+		Random random = new Random(1);
+		for (int i = 0; i < 100_000; i++) {
+			long value = (random.nextLong() >>> 1) >>> random.nextInt(63);
+			long upperBound = Histogram.bucketUpperBound(Histogram.bucketIndex(value));
+			assertTrue(value + " in bucket up to " + upperBound, upperBound >= value && upperBound - value <= value / 8);
+		}
+	}
+
+	@Test
+	public void reportsStatistics() {
+		Histogram histogram = new Histogram();
+		assertEquals(0, histogram.getValueAtPercentile(50));
+		for (int value = 1; value <= 100; value++) {
+			histogram.record(value);
+		}
+		assertEquals(100, histogram.getCount());
+		assertEquals(5050, histogram.getSum());
+		assertEquals(100, histogram.getMax());
+		assertEquals(50.5, histogram.getMean(), 0);
+		long median = histogram.getValueAtPercentile(50);
+		assertTrue("median " + median, median >= 50 && median <= 50 + 50 / 8);
+		assertEquals(100, histogram.getValueAtPercentile(100));
+		assertEquals(1, histogram.getValueAtPercentile(0));
+	}
+
+	@Test
+	public void recordsNegativeValuesAsZero() {
+		Histogram histogram = new Histogram();
+		histogram.record(-5);
+		assertEquals(1, histogram.getCount());
+		assertEquals(0, histogram.getSum());
+		assertEquals(0, histogram.getValueAtPercentile(100));
+	}
+
+	@Test
+	public void resets() {
+		Histogram histogram = new Histogram();
+		histogram.record(1_000);
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getValueAtPercentile(99));
+	}
+
+}